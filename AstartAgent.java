@@ -1,21 +1,61 @@
 package edu.cwru.sepia.agent;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.Callable;
 
 import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.agent.astar.AlternativeRoutes;
+import edu.cwru.sepia.agent.astar.AnytimeAstar;
+import edu.cwru.sepia.agent.astar.AsyncPlanner;
+import edu.cwru.sepia.agent.astar.BidirectionalAstar;
+import edu.cwru.sepia.agent.astar.DStarLite;
+import edu.cwru.sepia.agent.astar.DirectionPath;
+import edu.cwru.sepia.agent.astar.DistanceField;
+import edu.cwru.sepia.agent.astar.EnemyForecast;
+import edu.cwru.sepia.agent.astar.GridAstar;
+import edu.cwru.sepia.agent.astar.HierarchicalPlanner;
+import edu.cwru.sepia.agent.astar.JumpPointSearch;
+import edu.cwru.sepia.agent.astar.LandmarkHeuristic;
+import edu.cwru.sepia.agent.astar.MetricsCsvSink;
+import edu.cwru.sepia.agent.astar.ObstacleGrid;
+import edu.cwru.sepia.agent.astar.ParallelAstar;
+import edu.cwru.sepia.agent.astar.PathCorridor;
+import edu.cwru.sepia.agent.astar.PlanningMetrics;
+import edu.cwru.sepia.agent.astar.PlayerData;
+import edu.cwru.sepia.agent.astar.RealTimeAstar;
+import edu.cwru.sepia.agent.astar.SafeIntervalPlanner;
+import edu.cwru.sepia.agent.astar.SearchArena;
+import edu.cwru.sepia.agent.astar.SearchStats;
+import edu.cwru.sepia.agent.astar.SepiaWorldView;
+import edu.cwru.sepia.agent.astar.SquadPlanner;
+import edu.cwru.sepia.agent.astar.SquadPlanner.UnitPlan;
+import edu.cwru.sepia.agent.astar.SubgoalGraph;
+import edu.cwru.sepia.agent.astar.TraceRecorder;
+import edu.cwru.sepia.agent.astar.TraceRecorder.Level;
+import edu.cwru.sepia.agent.astar.WorldSnapshot;
+import edu.cwru.sepia.agent.astar.WorldView;
 import edu.cwru.sepia.environment.model.history.History;
-import edu.cwru.sepia.environment.model.state.ResourceNode;
 import edu.cwru.sepia.environment.model.state.State;
-import edu.cwru.sepia.environment.model.state.Unit;
 import edu.cwru.sepia.util.Direction;
 
 public class AstarAgent extends Agent {
@@ -61,13 +101,141 @@ public class AstarAgent extends Agent {
         
     }
 
-    Stack<MapLocation> path;
+    /**
+     * Path planners the agent can use, selected with the "mode=<name>" agent argument.
+     * ASTAR searches from scratch on every replan, DSTAR_LITE keeps its search tree and
+     * repairs it around the cells the enemy footman left and entered, JPS runs Jump Point Search
+     * which only expands the cells where the path can turn, HPA searches a precomputed graph of
+     * cluster entrances and refines one leg of it at a time, DISTANCE_FIELD follows a field of
+     * distances to the townhall computed once and repaired where the enemy footman moves,
+     * BIDIRECTIONAL grows one A* frontier from the footman and one from the townhall,
+     * ANYTIME runs ARA* within a time budget per turn and keeps improving the path on later turns,
+     * SUBGOAL searches a graph of the cells beside the ends of tree walls built once per map,
+     * PARALLEL spreads one A* search over the planner threads by hashing cells to them (HDA*),
+     * SIPP plans in space and time around the enemy footman's predicted moves and waits for it to pass,
+     * REALTIME runs a bounded RTAA* lookahead every turn and learns a heuristic kept between games,
+     * MULTI_TARGET searches to the nearest free cell beside any enemy structure in a single A* search.
+     */
+    enum SearchMode {
+        ASTAR,
+        DSTAR_LITE,
+        JPS,
+        HPA,
+        DISTANCE_FIELD,
+        BIDIRECTIONAL,
+        ANYTIME,
+        SUBGOAL,
+        PARALLEL,
+        SIPP,
+        REALTIME,
+        MULTI_TARGET
+    }
+
+    // direction of every step to the townhall, the cursor is at the lead footman's next move
+    DirectionPath path;
     int footmanID, townhallID, enemyFootmanID;
-    MapLocation nextLoc;
+    // every enemy unit that is not a footman, the townhall included; the targets in MULTI_TARGET mode
+    List<Integer> structureIDs = new ArrayList<>();
+    SearchMode searchMode = SearchMode.ASTAR;
+    int clusterSize = 16;
+    long planBudgetNanos = 5000000;
+    int plannerThreads = Runtime.getRuntime().availableProcessors();
+    double initialEpsilon = 3.0;
+    int landmarkCount = 0;
+    int forecastHorizon = 16;
+    int lookahead = 64;
+    int alternativeCount = 0;
+    boolean asyncPlanning = false;
+
+    // search bookkeeping shared by every findPath call on this map
+    private ObstacleGrid obstacles;
+    // cell of every resource node in the grid, diffed against the state every turn
+    private final Map<Integer, Integer> resourceCells = new HashMap<>();
+    // cells a resource appeared on this turn, checked against the squad's paths
+    private int[] newlyBlocked = new int[0];
+    // set when a resource appeared on the rest of the lead footman's path
+    private boolean pathObstructed;
+    // set when resources changed in a cluster the HPA route crosses, cut down trees included
+    private boolean routeStale;
+    private SearchArena arena;
+    private JumpPointSearch jumpPointPlanner;
+    private BidirectionalAstar bidirectionalPlanner;
+
+    // SEPIA direction of each DirectionPath code
+    private static final Direction[] DIRECTIONS = {
+        Direction.NORTH, Direction.WEST, Direction.SOUTH, Direction.EAST,
+        Direction.NORTHWEST, Direction.SOUTHWEST, Direction.SOUTHEAST, Direction.NORTHEAST
+    };
+
+    // remaining cells of path, checked against the enemy footman in shouldReplanPath
+    private PathCorridor corridor;
+    private int previousEnemyX = -1, previousEnemyY = -1;
+    // cell trackEnemy expects the enemy to step onto next, -1 if it made no guess; read by
+    // the searches, which may run on the planner thread
+    private volatile int predictedEnemyCell = -1;
+
+    // routes unlike the current path, searched in the background after every plan when alternatives > 0
+    private AlternativeRoutes alternativeRoutes;
+
+    // runs replans off the SEPIA thread when async=true; the footman keeps walking meanwhile
+    private AsyncPlanner asyncPlanner;
+
+    // search that is resumed every turn, only used in ANYTIME mode
+    private AnytimeAstar anytimePlanner;
+
+    // every footman after the first is planned with flat A* on the squad's worker threads
+    private SquadPlanner squadPlanner;
+    private List<UnitPlan> squadBatch = new ArrayList<>();
+
+    // subgoal graph of the trees, only used in SUBGOAL mode; kept while episodes are played on the same map
+    private SubgoalGraph subgoalGraph;
+    private boolean subgoalFallback;
+
+    // hash distributed A* on plannerThreads workers, only used in PARALLEL mode
+    private ParallelAstar parallelPlanner;
+
+    // the enemy footman's recent cells and the space-time search that avoids them, only used in SIPP mode
+    private EnemyForecast enemyForecast;
+    private SafeIntervalPlanner safeIntervalPlanner;
+
+    // lookahead search and its learned heuristic, only used in REALTIME mode; kept while episodes
+    // are played on the same map and restored from the player data of earlier games
+    private RealTimeAstar realTimePlanner;
+    private byte[] savedLearnedHeuristic;
+
+    // cluster graph, only used in HPA mode
+    private HierarchicalPlanner hierarchicalPlanner;
+
+    // landmark distance tables of the current map, only used when "landmarks=<count>" is given;
+    // kept in a file under saves/ that the player data points to, see loadPlayerData
+    private LandmarkHeuristic landmarks;
+    // set once a resource is removed, the tables may overestimate from then on
+    private boolean landmarksStale;
+    private File landmarkFile;
+    // landmark files kept under saves/, the least recently used ones beyond this are deleted
+    private static final int LANDMARK_FILES_KEPT = 4;
+    private File savedLandmarkFile;
+    private long savedLandmarkFingerprint;
+    private int savedLandmarkCount;
+
+    // incremental planner state, only used in DSTAR_LITE and DISTANCE_FIELD mode
+    private DStarLite incrementalPlanner;
+    private DistanceField distanceField;
+    private int lastEnemyCell = -1;
 
     private long totalPlanTime = 0; // nsecs
     private long totalExecutionTime = 0; //nsecs
 
+    // per-search counters, published over JMX and/or appended to a CSV file when enabled
+    private final PlanningMetrics metrics = new PlanningMetrics();
+    private boolean publishMetrics = false;
+    private boolean writeMetricsCsv = false;
+    private MetricsCsvSink metricsSink;
+    private String metricsFile = "saves/astar-metrics.csv";
+
+    // messages from the move loop are printed by a background thread, see "trace=<level>"
+    private final TraceRecorder trace = new TraceRecorder(Level.INFO, 4096, System.out);
+
     public AstarAgent(int playernum)
     {
         super(playernum);
@@ -75,8 +243,137 @@ public class AstarAgent extends Agent {
         System.out.println("Constructed AstarAgent");
     }
 
+    /**
+     * Arguments are given as key=value pairs, e.g. "mode=dstar_lite".
+     *
+     * @param playernum
+     * @param params
+     */
+    public AstarAgent(int playernum, String[] params)
+    {
+        this(playernum);
+
+        for(String param : params)
+        {
+            String[] keyValue = param.split("=", 2);
+            if(keyValue.length != 2)
+            {
+                System.err.println("Ignoring malformed argument: " + param);
+                continue;
+            }
+            applyArgument(keyValue[0].trim().toLowerCase(), keyValue[1].trim());
+        }
+
+        System.out.println("Search mode: " + searchMode);
+
+        if(writeMetricsCsv) {
+            metricsSink = new MetricsCsvSink(new File(metricsFile));
+        }
+    }
+
+    private void applyArgument(String key, String value)
+    {
+        try
+        {
+            switch(key)
+            {
+                case "mode":
+                    searchMode = SearchMode.valueOf(value.toUpperCase());
+                    break;
+                case "clustersize":
+                    clusterSize = Integer.parseInt(value);
+                    break;
+                case "metrics":
+                    // comma separated list of sinks, e.g. "jmx,csv"
+                    for(String sink : value.toLowerCase().split(",")) {
+                        switch(sink.trim()) {
+                            case "jmx":
+                                publishMetrics = true;
+                                break;
+                            case "csv":
+                                writeMetricsCsv = true;
+                                break;
+                            case "off":
+                                break;
+                            default:
+                                throw new IllegalArgumentException(sink);
+                        }
+                    }
+                    break;
+                case "budgetms":
+                    planBudgetNanos = (long) (Double.parseDouble(value) * 1e6);
+                    break;
+                case "threads":
+                    plannerThreads = Integer.parseInt(value);
+                    break;
+                case "landmarks":
+                    landmarkCount = Integer.parseInt(value);
+                    break;
+                case "horizon":
+                    forecastHorizon = Integer.parseInt(value);
+                    break;
+                case "lookahead":
+                    lookahead = Integer.parseInt(value);
+                    break;
+                case "alternatives":
+                    alternativeCount = Integer.parseInt(value);
+                    break;
+                case "async":
+                    asyncPlanning = Boolean.parseBoolean(value);
+                    break;
+                case "epsilon":
+                    initialEpsilon = Double.parseDouble(value);
+                    break;
+                case "trace":
+                    trace.setLevel(Level.valueOf(value.toUpperCase()));
+                    break;
+                case "metricsfile":
+                    metricsFile = value;
+                    writeMetricsCsv = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + key);
+            }
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.err.println("Invalid value for " + key + ": " + value);
+        }
+    }
+
     @Override
     public Map<Integer, Action> initialStep(State.StateView newstate, History.HistoryView statehistory) {
+        return initialStep(new SepiaWorldView(newstate));
+    }
+
+    @Override
+    public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
+        return middleStep(new SepiaWorldView(newstate));
+    }
+
+    @Override
+    public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
+        terminalStep(new SepiaWorldView(newstate));
+    }
+
+    /**
+     * Same as the SEPIA callback, for any world the agent can see through a WorldView,
+     * e.g. the in-memory world of the headless runner.
+     *
+     * @param newstate
+     * @return Actions for the first turn
+     */
+    public Map<Integer, Action> initialStep(WorldView newstate) {
+        // searches of the last episode read the map and arena replaced below, so they must end first
+        if(asyncPlanner != null) {
+            asyncPlanner.shutdown();
+            asyncPlanner = null;
+        }
+        if(alternativeRoutes != null) {
+            alternativeRoutes.shutdown();
+            alternativeRoutes = null;
+        }
+
         // get the footman location
         List<Integer> unitIDs = newstate.getUnitIds(playernum);
 
@@ -89,12 +386,22 @@ public class AstarAgent extends Agent {
         footmanID = unitIDs.get(0);
 
         // double check that this is a footman
-        if(!newstate.getUnit(footmanID).getTemplateView().getName().equals("Footman"))
+        if(!newstate.getUnit(footmanID).getTemplateName().equals("Footman"))
         {
             System.err.println("Footman unit not found");
             return null;
         }
 
+        // the first footman leads with the selected search mode, the rest are planned as a squad
+        List<Integer> squadIDs = new ArrayList<>();
+        for(Integer unitID : unitIDs)
+        {
+            if(unitID != footmanID && newstate.getUnit(unitID).getTemplateName().equals("Footman"))
+            {
+                squadIDs.add(unitID);
+            }
+        }
+
         // find the enemy playernum
         Integer[] playerNums = newstate.getPlayerNumbers();
         int enemyPlayerNum = -1;
@@ -123,13 +430,15 @@ public class AstarAgent extends Agent {
 
         townhallID = -1;
         enemyFootmanID = -1;
+        structureIDs.clear();
         for(Integer unitID : enemyUnitIDs)
         {
-            Unit.UnitView tempUnit = newstate.getUnit(unitID);
-            String unitType = tempUnit.getTemplateView().getName().toLowerCase();
+            WorldView.UnitInfo tempUnit = newstate.getUnit(unitID);
+            String unitType = tempUnit.getTemplateName().toLowerCase();
             if(unitType.equals("townhall"))
             {
                 townhallID = unitID;
+                structureIDs.add(unitID);
             }
             else if(unitType.equals("footman"))
             {
@@ -137,7 +446,9 @@ public class AstarAgent extends Agent {
             }
             else
             {
-                System.err.println("Unknown unit type");
+                // e.g. barracks or farms, only attacked in MULTI_TARGET mode
+                System.err.println("Unknown unit type " + unitType);
+                structureIDs.add(unitID);
             }
         }
 
@@ -146,91 +457,525 @@ public class AstarAgent extends Agent {
             return null;
         }
 
+        // built once per episode, syncObstacles applies the resources that come and go later
+        obstacles = buildObstacleGrid(newstate);
+        newlyBlocked = new int[0];
+        pathObstructed = false;
+        routeStale = false;
+        landmarksStale = false;
+        arena = new SearchArena(obstacles);
+        jumpPointPlanner = new JumpPointSearch(arena);
+        if(landmarkCount > 0) {
+            long landmarkStartTime = System.nanoTime();
+            landmarks = prepareLandmarks(obstacles);
+            totalPlanTime += System.nanoTime() - landmarkStartTime;
+        } else {
+            landmarks = null;
+        }
+        corridor = new PathCorridor(newstate.getXExtent(), newstate.getYExtent());
+        if(squadPlanner != null) {
+            squadPlanner.shutdown();
+            squadPlanner = null;
+        }
+        if(!squadIDs.isEmpty()) {
+            squadPlanner = new SquadPlanner(obstacles, plannerThreads);
+            squadPlanner.setLandmarks(landmarks);
+            for(Integer unitID : squadIDs) {
+                squadPlanner.add(unitID);
+            }
+            System.out.println("Planning " + squadIDs.size() + " more footmen on " + plannerThreads + " threads");
+        }
+        previousEnemyX = -1;
+        previousEnemyY = -1;
+        predictedEnemyCell = -1;
+        // the same agent plays every episode, drop what the last one left behind
+        incrementalPlanner = null;
+        lastEnemyCell = -1;
+        if(searchMode == SearchMode.BIDIRECTIONAL) {
+            bidirectionalPlanner = new BidirectionalAstar(obstacles);
+        }
+        if(searchMode == SearchMode.ANYTIME) {
+            anytimePlanner = new AnytimeAstar(obstacles, initialEpsilon);
+        }
+        if(parallelPlanner != null) {
+            parallelPlanner.shutdown();
+            parallelPlanner = null;
+        }
+        if(searchMode == SearchMode.SIPP) {
+            // velocity averaged over the last three moves
+            enemyForecast = new EnemyForecast(obstacles, 4);
+            safeIntervalPlanner = new SafeIntervalPlanner(obstacles);
+        }
+        if(asyncPlanning) {
+            if(plansWholeRoute()) {
+                asyncPlanner = new AsyncPlanner();
+            } else {
+                System.err.println("Replans run on the SEPIA thread in " + searchMode + " mode");
+            }
+        }
+        if(alternativeCount > 0) {
+            if(plansWholeRoute()) {
+                alternativeRoutes = new AlternativeRoutes(obstacles, alternativeCount);
+            } else {
+                System.err.println("Alternative routes are not computed in " + searchMode + " mode");
+            }
+        }
+        if(searchMode == SearchMode.REALTIME) {
+            WorldView.UnitInfo townhallUnit = newstate.getUnit(townhallID);
+            int goalCell = obstacles.cell(townhallUnit.getXPosition(), townhallUnit.getYPosition());
+            if(realTimePlanner == null || !realTimePlanner.matches(obstacles, goalCell)) {
+                realTimePlanner = new RealTimeAstar(obstacles, lookahead);
+                restoreLearnedHeuristic();
+            }
+        }
+        if(searchMode == SearchMode.PARALLEL) {
+            // more workers than cores only interleave and expand nodes out of order
+            int workers = Math.min(plannerThreads, Runtime.getRuntime().availableProcessors());
+            parallelPlanner = new ParallelAstar(obstacles, workers);
+            System.out.println("Searching with HDA* on " + workers + " threads");
+        }
+
+        if(searchMode == SearchMode.HPA) {
+            hierarchicalPlanner = new HierarchicalPlanner(obstacles, clusterSize);
+            hierarchicalPlanner.build();
+            totalPlanTime += hierarchicalPlanner.getBuildTime();
+            System.out.println("Built cluster graph with " + hierarchicalPlanner.getNodeCount() + " entrances in "
+                    + hierarchicalPlanner.getBuildTime()/1e9 + "s");
+        }
+
+        if(searchMode == SearchMode.SUBGOAL && (subgoalGraph == null || !subgoalGraph.matches(obstacles))) {
+            subgoalGraph = new SubgoalGraph(obstacles);
+            subgoalGraph.build();
+            totalPlanTime += subgoalGraph.getBuildTime();
+            System.out.println("Built subgoal graph with " + subgoalGraph.getNodeCount() + " subgoals and "
+                    + subgoalGraph.getEdgeCount() + " edges in " + subgoalGraph.getBuildTime()/1e9 + "s");
+        }
+
+        if(searchMode == SearchMode.DISTANCE_FIELD) {
+            // the townhall never moves, so the field towards it is computed once
+            long fieldStartTime = System.nanoTime();
+            WorldView.UnitInfo townhallUnit = newstate.getUnit(townhallID);
+            distanceField = new DistanceField(obstacles);
+            distanceField.build(obstacles.cell(townhallUnit.getXPosition(), townhallUnit.getYPosition()));
+            totalPlanTime += System.nanoTime() - fieldStartTime;
+        }
+
+        if(publishMetrics) {
+            // unregistered again in terminalStep, so no MBean outlives its episode
+            metrics.register("edu.cwru.sepia.agent:type=PlanningMetrics,player=" + playernum);
+        }
+        if(metricsSink != null) {
+            metricsSink.open();
+        }
+
         long startTime = System.nanoTime();
-        path = findPath(newstate);
+        path = findPath(newstate, "initial");
+        planAlternatives(newstate);
         totalPlanTime += System.nanoTime() - startTime;
+        updateCorridor();
 
-        return middleStep(newstate, statehistory);
+        return middleStep(newstate);
     }
 
-    @Override
-    public Map<Integer, Action> middleStep(State.StateView newstate, History.HistoryView statehistory) {
+    /**
+     * @param newstate
+     * @return Actions for this turn
+     */
+    public Map<Integer, Action> middleStep(WorldView newstate) {
+        syncObstacles(newstate);
+        if(newstate.getUnit(footmanID) == null && !promoteLeader(newstate)) {
+            // every footman is dead
+            return new HashMap<Integer, Action>();
+        }
+        if(squadPlanner == null) {
+            return stepLeader(newstate);
+        }
+
+        // the squad's searches run on the pool while the lead footman plans on this thread
+        long squadStartTime = System.nanoTime();
+        planSquad(newstate);
+        long submitTime = System.nanoTime() - squadStartTime;
+
+        Map<Integer, Action> actions = stepLeader(newstate);
+
+        long waitStartTime = System.nanoTime();
+        addSquadActions(newstate, actions);
+        totalPlanTime += submitTime + System.nanoTime() - waitStartTime;
+        return actions;
+    }
+
+    /**
+     * Makes the first surviving squad member the lead footman after the leader was killed. Its
+     * squad path is dropped and the selected search mode plans a new one from where it stands.
+     *
+     * @param state
+     * @return false if no footman is left
+     */
+    private boolean promoteLeader(WorldView state)
+    {
+        if(squadPlanner == null) {
+            return false;
+        }
+        for(UnitPlan plan : squadPlanner.getPlans()) {
+            if(state.getUnit(plan.getUnitID()) == null) {
+                continue;
+            }
+            if(asyncPlanner != null) {
+                // a running search still plans for the dead leader and shares the arena
+                asyncPlanner.await(Long.MAX_VALUE);
+                asyncPlanner.cancel();
+            }
+            squadPlanner.remove(plan.getUnitID());
+            trace.record(Level.INFO, "Footman %d leads after footman %d was killed", plan.getUnitID(), footmanID);
+            footmanID = plan.getUnitID();
+            path = null;
+            updateCorridor();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves the lead footman along its path, planning with the selected search mode.
+     *
+     * @param newstate
+     * @return Action for the lead footman, if any
+     */
+    private Map<Integer, Action> stepLeader(WorldView newstate) {
         long startTime = System.nanoTime();
         long planTime = 0;
 
         Map<Integer, Action> actions = new HashMap<Integer, Action>();
 
-        if(shouldReplanPath(newstate, statehistory, path)) {
+        if(asyncPlanner != null) {
+            takeAsyncPlan(newstate);
+        }
+
+        trackEnemy(newstate);
+
+        boolean replanned = false;
+        // with a background search under way the enemy is already being planned around; checked
+        // first, since shouldReplanPath clears the resource flags it answers for
+        if((asyncPlanner == null || !asyncPlanner.isBusy()) && shouldReplanPath(newstate, path)) {
+            replanned = true;
+            metrics.countReplan();
             long planStartTime = System.nanoTime();
-            path = findPath(newstate);
+            DirectionPath detour = alternativeRoutes == null ? null : switchToAlternative(newstate);
+            if(detour != null) {
+                metrics.countAlternativeSwitch();
+                path = detour;
+            } else if(asyncPlanner != null) {
+                // the current path stays in use until takeAsyncPlan swaps in the new one
+                asyncPlanner.submit(searchInBackground(newstate));
+            } else {
+                path = findPath(newstate, "replan");
+                planAlternatives(newstate);
+            }
+            updateCorridor();
             planTime = System.nanoTime() - planStartTime;
             totalPlanTime += planTime;
         }
 
-        Unit.UnitView footmanUnit = newstate.getUnit(footmanID);
+        WorldView.UnitInfo footmanUnit = newstate.getUnit(footmanID);
 
         int footmanX = footmanUnit.getXPosition();
         int footmanY = footmanUnit.getYPosition();
 
-        if(!path.empty() && (nextLoc == null || (footmanX == nextLoc.x && footmanY == nextLoc.y))) {
-            // stat moving to the next step in the path
-            nextLoc = path.pop();
+        if(asyncPlanner != null && asyncPlanner.isBusy()
+                && (stepIsBlocked(newstate, footmanX, footmanY) || isStranded(newstate, footmanX, footmanY))) {
+            // the old path runs into the enemy or a resource or there is none, so give the search up to a turn's budget first
+            long waitStartTime = System.nanoTime();
+            boolean done = asyncPlanner.await(planBudgetNanos);
+            long waitTime = System.nanoTime() - waitStartTime;
+            planTime += waitTime;
+            totalPlanTime += waitTime;
+            if(!done) {
+                trace.record(Level.DEBUG, "Holding at (%d, %d) until the new path is ready", footmanX, footmanY);
+                totalExecutionTime += System.nanoTime() - startTime - planTime;
+                return actions;
+            }
+            takeAsyncPlan(newstate);
+        }
+
+        if(searchMode == SearchMode.ANYTIME && !replanned && !anytimePlanner.isFinished()) {
+            // spend this turn's budget improving the path; a replan already used it
+            long planStartTime = System.nanoTime();
+            if(anytimePlanner.run(planStartTime + planBudgetNanos) || anytimePlanner.isExhausted()) {
+                path = anytimePlan(obstacles.cell(footmanX, footmanY));
+                updateCorridor();
+            }
+            long improveTime = System.nanoTime() - planStartTime;
+            planTime += improveTime;
+            totalPlanTime += improveTime;
+        }
+
+        if(searchMode == SearchMode.REALTIME && !replanned && path != null && !realTimePlanner.reachedGoal()
+                && footmanX == path.getX() && footmanY == path.getY()) {
+            // one bounded lookahead per turn, from wherever the last step led
+            long planStartTime = System.nanoTime();
+            path = findPath(newstate, "lookahead");
+            updateCorridor();
+            long lookaheadTime = System.nanoTime() - planStartTime;
+            planTime += lookaheadTime;
+            totalPlanTime += lookaheadTime;
+        }
+
+        if(searchMode == SearchMode.HPA && path != null && path.isEmpty() && hierarchicalPlanner.hasNextLeg()
+                && footmanX == path.getX() && footmanY == path.getY()) {
+            // finished the refined leg, refine the next edge of the abstract path
+            long planStartTime = System.nanoTime();
+            path = nextHierarchicalLeg(newstate);
+            updateCorridor();
+            long legTime = System.nanoTime() - planStartTime;
+            planTime += legTime;
+            totalPlanTime += legTime;
+        }
 
-            System.out.println("Moving to (" + nextLoc.x + ", " + nextLoc.y + ")");
+        if(path != null && !path.isEmpty() && footmanX == path.getX() && footmanY == path.getY()) {
+            // stat moving to the next step in the path
+            if(path.getCursor() > 0) {
+                corridor.remove(path.getX(), path.getY());
+            }
+            if(path.next() == DirectionPath.HOLD) {
+                trace.record(Level.DEBUG, "Holding at (%d, %d)", path.getX(), path.getY());
+            } else {
+                trace.record(Level.DEBUG, "Moving to (%d, %d)", path.getX(), path.getY());
+            }
         }
 
-        if(nextLoc != null && (footmanX != nextLoc.x || footmanY != nextLoc.y))
+        if(path != null && (footmanX != path.getX() || footmanY != path.getY()))
         {
-            int xDiff = nextLoc.x - footmanX;
-            int yDiff = nextLoc.y - footmanY;
+            int xDiff = path.getX() - footmanX;
+            int yDiff = path.getY() - footmanY;
 
-            // figure out the direction the footman needs to move in
-            Direction nextDirection = getNextDirection(xDiff, yDiff);
+            // the footman stands one step behind its target unless a move went wrong
+            int code = path.getLastDirection();
+            Direction nextDirection = code != DirectionPath.HOLD && xDiff == DirectionPath.DX[code] && yDiff == DirectionPath.DY[code]
+                    ? DIRECTIONS[code] : getNextDirection(xDiff, yDiff);
 
             actions.put(footmanID, Action.createPrimitiveMove(footmanID, nextDirection));
         } else {
-            Unit.UnitView townhallUnit = newstate.getUnit(townhallID);
+            WorldView.UnitInfo townhallUnit = newstate.getUnit(townhallID);
 
             // if townhall was destroyed on the last turn
             if(townhallUnit == null) {
-                terminalStep(newstate, statehistory);
+                terminalStep(newstate);
                 return actions;
             }
 
-            if(Math.abs(footmanX - townhallUnit.getXPosition()) > 1 ||
-                    Math.abs(footmanY - townhallUnit.getYPosition()) > 1)
+            int targetID = attackTarget(newstate, footmanX, footmanY);
+            if(targetID == -1)
             {
                 //System.err.println("Invalid plan. Cannot attack townhall");
                 totalExecutionTime += System.nanoTime() - startTime - planTime;
                 return actions;
             }
-            else {
-                System.out.println("Attacking TownHall");
+            else if(targetID == townhallID) {
+                trace.record(Level.DEBUG, "Attacking TownHall");
                 // if no more movements in the planned path then attack
                 actions.put(footmanID, Action.createPrimitiveAttack(footmanID, townhallID));
             }
+            else {
+                trace.record(Level.DEBUG, "Attacking structure %d", targetID);
+                actions.put(footmanID, Action.createPrimitiveAttack(footmanID, targetID));
+            }
         }
 
         totalExecutionTime += System.nanoTime() - startTime - planTime;
         return actions;
     }
 
-    @Override
-    public void terminalStep(State.StateView newstate, History.HistoryView statehistory) {
+    /**
+     * Decides which squad members need a new path this turn and starts their searches.
+     * A member replans when it has no path, when the enemy footman stands on the rest of its path,
+     * when it finished its path without reaching the townhall, or when it has been stuck behind
+     * another unit for two turns, in which case the search also avoids the other footmen.
+     *
+     * @param state
+     */
+    private void planSquad(WorldView state)
+    {
+        squadBatch.clear();
+        WorldView.UnitInfo townhallUnit = state.getUnit(townhallID);
+        if(townhallUnit == null) {
+            return;
+        }
+        int goalCell = obstacles.cell(townhallUnit.getXPosition(), townhallUnit.getYPosition());
+        int enemyCell = -1;
+        if(enemyFootmanID != -1 && state.getUnit(enemyFootmanID) != null) {
+            WorldView.UnitInfo enemyFootmanUnit = state.getUnit(enemyFootmanID);
+            enemyCell = obstacles.cell(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition());
+        }
+
+        List<Integer> friendCells = new ArrayList<>();
+        WorldView.UnitInfo leader = state.getUnit(footmanID);
+        if(leader != null) {
+            friendCells.add(obstacles.cell(leader.getXPosition(), leader.getYPosition()));
+        }
+
+        List<Integer> startCells = new ArrayList<>();
+        List<Boolean> avoidFriends = new ArrayList<>();
+        for(Iterator<UnitPlan> it = squadPlanner.getPlans().iterator(); it.hasNext();) {
+            UnitPlan plan = it.next();
+            WorldView.UnitInfo unit = state.getUnit(plan.getUnitID());
+            if(unit == null) {
+                // killed
+                it.remove();
+                continue;
+            }
+            int cell = obstacles.cell(unit.getXPosition(), unit.getYPosition());
+            friendCells.add(cell);
+            plan.observe(cell);
+
+            boolean atTownhall = Math.abs(unit.getXPosition() - townhallUnit.getXPosition()) <= 1
+                    && Math.abs(unit.getYPosition() - townhallUnit.getYPosition()) <= 1;
+            boolean stuck = plan.getStuckTurns() >= 2;
+            if(!plan.hasPath() || plan.isAhead(enemyCell) || stuck || (plan.nextCell() == -1 && !atTownhall)
+                    || isObstructed(plan)) {
+                squadBatch.add(plan);
+                startCells.add(cell);
+                avoidFriends.add(stuck);
+            }
+        }
+
+        if(squadBatch.isEmpty()) {
+            return;
+        }
+        int[] starts = new int[startCells.size()];
+        boolean[] avoid = new boolean[avoidFriends.size()];
+        for(int i = 0; i < starts.length; i++) {
+            starts[i] = startCells.get(i);
+            avoid[i] = avoidFriends.get(i);
+        }
+        int[] friends = new int[friendCells.size()];
+        for(int i = 0; i < friends.length; i++) {
+            friends[i] = friendCells.get(i);
+        }
+        squadPlanner.planAsync(squadBatch, starts, avoid, goalCell, enemyCell, friends);
+    }
+
+    /**
+     * Waits for the squad's searches and adds a move or attack for every squad member.
+     *
+     * @param state
+     * @param actions Actions of the lead footman, the squad's are added to it
+     */
+    private void addSquadActions(WorldView state, Map<Integer, Action> actions)
+    {
+        squadPlanner.await();
+        for(UnitPlan plan : squadBatch) {
+            metrics.recordSearch(plan.getStats(), plan.getLatencyNanos());
+            if(metricsSink != null) {
+                int pathLength = plan.hasPath() ? plan.getPathLength() : -1;
+                metricsSink.write(state.getTurnNumber(), "astar", "squad", plan.getLatencyNanos(), plan.getStats(), pathLength);
+            }
+            if(!plan.hasPath()) {
+                trace.record(Level.WARN, "No path for footman %d", plan.getUnitID());
+            }
+        }
+
+        WorldView.UnitInfo townhallUnit = state.getUnit(townhallID);
+        for(UnitPlan plan : squadPlanner.getPlans()) {
+            int unitID = plan.getUnitID();
+            WorldView.UnitInfo unit = state.getUnit(unitID);
+            int nextCell = plan.nextCell();
+            if(nextCell != -1) {
+                Direction direction = getNextDirection(nextCell % obstacles.getXExtent() - unit.getXPosition(),
+                        nextCell / obstacles.getXExtent() - unit.getYPosition());
+                actions.put(unitID, Action.createPrimitiveMove(unitID, direction));
+            } else if(townhallUnit != null
+                    && Math.abs(unit.getXPosition() - townhallUnit.getXPosition()) <= 1
+                    && Math.abs(unit.getYPosition() - townhallUnit.getYPosition()) <= 1) {
+                actions.put(unitID, Action.createPrimitiveAttack(unitID, townhallID));
+            }
+        }
+    }
+
+    /**
+     * @param newstate
+     */
+    public void terminalStep(WorldView newstate) {
+        if(asyncPlanner != null) {
+            // its path is of no use any more, but it must not outlive the episode
+            asyncPlanner.cancel();
+            asyncPlanner.await(Long.MAX_VALUE);
+        }
+        trace.flush(1000);
         System.out.println("Total turns: " + newstate.getTurnNumber());
         System.out.println("Total planning time: " + totalPlanTime/1e9);
         System.out.println("Total execution time: " + totalExecutionTime/1e9);
         System.out.println("Total time: " + (totalExecutionTime + totalPlanTime)/1e9);
+        System.out.println("Searches: " + metrics.getSearchCount() + ", replans: " + metrics.getReplanCount());
+        if(alternativeRoutes != null) {
+            System.out.println("Replans served by an alternative route: " + metrics.getAlternativeSwitchCount());
+        }
+        System.out.println("Total nodes expanded (" + searchMode + "): " + metrics.getNodesExpanded()
+                + ", generated: " + metrics.getNodesGenerated() + ", peak open set: " + metrics.getPeakOpenSetSize());
+        System.out.println("Search latency p50: <" + metrics.getLatencyPercentileMicros(0.5) + "us, p99: <"
+                + metrics.getLatencyPercentileMicros(0.99) + "us, max: " + metrics.getMaxLatencyMicros() + "us");
+        if(metricsSink != null) {
+            metricsSink.close();
+        }
+        metrics.unregister();
     }
 
+    /**
+     * Saves where the landmark tables of the last map are, so the next game on that map can map
+     * them instead of computing them again. The tables themselves stay in their file.
+     */
     @Override
     public void savePlayerData(OutputStream os) {
-
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        try {
+            if(landmarks != null && landmarkFile != null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeLong(landmarks.getFingerprint());
+                out.writeInt(landmarks.getLandmarkCount());
+                out.writeUTF(landmarkFile.getPath());
+                out.flush();
+                sections.put("landmarks", bytes.toByteArray());
+            }
+            if(realTimePlanner != null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                realTimePlanner.write(out);
+                out.flush();
+                sections.put("learned", bytes.toByteArray());
+            }
+            PlayerData.write(os, sections);
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
     public void loadPlayerData(InputStream is) {
+        Map<String, byte[]> sections;
+        try {
+            sections = PlayerData.read(is);
+        } catch(EOFException e) {
+            // nothing was saved yet
+            return;
+        } catch(IOException e) {
+            System.err.println("Ignoring player data: " + e.getMessage());
+            return;
+        }
+
+        byte[] landmarkSection = sections.get("landmarks");
+        if(landmarkSection != null) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(landmarkSection));
+                savedLandmarkFingerprint = in.readLong();
+                savedLandmarkCount = in.readInt();
+                savedLandmarkFile = new File(in.readUTF());
+            } catch(IOException e) {
+                System.err.println("Ignoring saved landmark tables: " + e.getMessage());
+            }
+        }
 
+        // read once the map is known, in initialStep
+        savedLearnedHeuristic = sections.get("learned");
     }
 
     /**
@@ -246,88 +991,1059 @@ public class AstarAgent extends Agent {
      * There are more examples of getting the positions of objects in SEPIA in the findPath method.
      *
      * @param state
-     * @param history
      * @param currentPath
      * @return
      */
-    private boolean shouldReplanPath(State.StateView state, History.HistoryView history, Stack<MapLocation> currentPath)
+    private boolean shouldReplanPath(WorldView state, DirectionPath currentPath)
     {
-        // Get the positions of your footman and the enemy footman
-        Unit.UnitView myFootman = state.getUnit(footmanID);
-        Unit.UnitView enemyFootman = state.getUnit(enemyFootmanID);
+        // no path was found last time, the enemy may have moved out of the way since
+        if (currentPath == null) {
+            return true;
+        }
 
-        if (myFootman != null && enemyFootman != null) {
-            // Define a proximity range (you can adjust this based on your needs)
-            int proximityRange = 2;
+        if (pathObstructed) {
+            pathObstructed = false;
+            trace.record(Level.INFO, "Replanning path because a resource appeared on it");
+            return true;
+        }
 
-            // Calculate the distance between your footman and the enemy footman
-            int xDiff = Math.abs(myFootman.getXPosition() - enemyFootman.getXPosition());
-            int yDiff = Math.abs(myFootman.getYPosition() - enemyFootman.getYPosition());
+        if (routeStale) {
+            routeStale = false;
+            trace.record(Level.INFO, "Replanning path because resources changed in a cluster on its route");
+            return true;
+        }
 
-            // If the enemy footman is within the proximity range, replan the path
-            if (xDiff <= proximityRange && yDiff <= proximityRange) {
-                System.out.println("Replanning path because enemy is too close.");
-                return false;
+        if (searchMode == SearchMode.MULTI_TARGET) {
+            // the structure the path led to may have been destroyed, the next one is somewhere else
+            WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+            if (isStranded(state, footmanUnit.getXPosition(), footmanUnit.getYPosition())) {
+                trace.record(Level.INFO, "Replanning path because no structure is left next to (%d, %d)",
+                        footmanUnit.getXPosition(), footmanUnit.getYPosition());
+                return true;
             }
         }
 
-        // If the enemy footman is not within the proximity range, continue with the current path
+        WorldView.UnitInfo enemyFootman = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        if (enemyFootman == null) {
+            return false;
+        }
+
+        if (searchMode == SearchMode.SIPP) {
+            // the plan already dodges the enemy in time, it only has to go if the forecast changed under it
+            return conflictsWithForecast(state, currentPath);
+        }
+
+        int enemyX = enemyFootman.getXPosition();
+        int enemyY = enemyFootman.getYPosition();
+        int predictedX = predictedEnemyCell == -1 ? -1 : predictedEnemyCell % obstacles.getXExtent();
+        int predictedY = predictedEnemyCell == -1 ? -1 : predictedEnemyCell / obstacles.getXExtent();
+
+        // only replan when the enemy stands on or is about to step onto the cells still ahead of us;
+        // the expected cell only counts where the search keeps clear of it, others would plan straight back through it
+        boolean onPath = corridor.contains(enemyX, enemyY);
+        if (onPath || (avoidsPredictedCell() && corridor.contains(predictedX, predictedY))) {
+            trace.record(Level.INFO, "Replanning path because the enemy blocks the path at (%d, %d)",
+                    onPath ? enemyX : predictedX, onPath ? enemyY : predictedY);
+            return true;
+        }
+
         return false;
     }
 
     /**
-     * This method is implemented for you. You should look at it to see examples of
-     * how to find units and resources in Sepia.
+     * Guesses the cell the enemy footman steps onto next by assuming it keeps moving the way it
+     * moved last turn. Runs every turn, also while a background search keeps shouldReplanPath
+     * from running, so the guess always follows the last move.
      *
      * @param state
-     * @return
      */
-    private Stack<MapLocation> findPath(State.StateView state)
+    private void trackEnemy(WorldView state)
     {
-        Unit.UnitView townhallUnit = state.getUnit(townhallID);
-        Unit.UnitView footmanUnit = state.getUnit(footmanID);
-
-        MapLocation startLoc = new MapLocation(footmanUnit.getXPosition(), footmanUnit.getYPosition(), null, 0);
-
-        MapLocation goalLoc = new MapLocation(townhallUnit.getXPosition(), townhallUnit.getYPosition(), null, 0);
-
-        MapLocation footmanLoc = null;
-        if(enemyFootmanID != -1) {
-            Unit.UnitView enemyFootmanUnit = state.getUnit(enemyFootmanID);
-            footmanLoc = new MapLocation(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition(), null, 0);
+        WorldView.UnitInfo enemyFootman = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        if (enemyFootman == null || searchMode == SearchMode.SIPP) {
+            // SIPP plans around the EnemyForecast instead
+            return;
         }
 
-        // get resource locations
-        List<Integer> resourceIDs = state.getAllResourceIds();
-        Set<MapLocation> resourceLocations = new HashSet<MapLocation>();
-        for(Integer resourceID : resourceIDs)
-        {
-            ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
+        int enemyX = enemyFootman.getXPosition();
+        int enemyY = enemyFootman.getYPosition();
+        int predictedX = enemyX;
+        int predictedY = enemyY;
+        if (previousEnemyX != -1) {
+            predictedX += Integer.signum(enemyX - previousEnemyX);
+            predictedY += Integer.signum(enemyY - previousEnemyY);
+        }
+        previousEnemyX = enemyX;
+        previousEnemyY = enemyY;
+        predictedEnemyCell = obstacles.inBounds(predictedX, predictedY) ? obstacles.cell(predictedX, predictedY) : -1;
+    }
 
-            resourceLocations.add(new MapLocation(resource.getXPosition(), resource.getYPosition(), null, 0));
+    /**
+     * @return true if the selected mode's search blocks the cell the enemy footman is expected to
+     *         enter as well as its own, so a replan for that cell routes around it
+     */
+    private boolean avoidsPredictedCell()
+    {
+        switch(searchMode) {
+            case ASTAR:
+            case JPS:
+            case MULTI_TARGET:
+                return true;
+            default:
+                return false;
         }
+    }
 
-    	goalLoc.goal=true;
-    	startLoc.start=true;
+    /**
+     * @return true if the selected mode plans the whole way to the townhall at once, so an
+     *         alternative route can stand in for it
+     */
+    private boolean plansWholeRoute()
+    {
+        switch(searchMode) {
+            case HPA:
+            case ANYTIME:
+            case SIPP:
+            case REALTIME:
+                return false;
+            default:
+                return true;
+        }
+    }
 
-        return AstarSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, resourceLocations);
+    /**
+     * @param state
+     * @return A findPath call on a copy of the units it reads, to run on the planner thread
+     */
+    private Callable<DirectionPath> searchInBackground(WorldView state)
+    {
+        int[] unitIDs = new int[structureIDs.size() + 2];
+        unitIDs[0] = footmanID;
+        unitIDs[1] = enemyFootmanID;
+        for(int i = 0; i < structureIDs.size(); i++) {
+            unitIDs[i + 2] = structureIDs.get(i);
+        }
+        WorldView snapshot = new WorldSnapshot(state, unitIDs);
+        return () -> findPath(snapshot, "replan");
     }
-    
+
     /**
-     * This is the method you will implement for the assignment. Your implementation
-     * will use the A* algorithm to compute the optimum path from the start position to
-     * a position adjacent to the goal position.
-     *
-     * Therefore your you need to find some possible adjacent steps which are in range 
-     * and are not trees or the enemy footman.
-     * Hint: Set<MapLocation> resourceLocations contains the locations of trees
-     *
-     * You will return a Stack of positions with the top of the stack being the first space to move to
-     * and the bottom of the stack being the last space to move to. If there is no path to the townhall
-     * then return null from the method and the agent will print a message and do nothing.
-     * The code to execute the plan is provided for you in the middleStep method.
+     * Swaps in the path of a background search that finished since the last turn. The footman
+     * has walked on meanwhile, so the path is resumed from where the footman stands on it; a
+     * path the footman is not on any more is dropped and searched again from where it stands.
      *
-     * As an example consider the following simple map
+     * @param state
+     */
+    private void takeAsyncPlan(WorldView state)
+    {
+        AsyncPlanner.Result result = asyncPlanner.poll();
+        if(result == null) {
+            return;
+        }
+        totalPlanTime += result.getLatencyNanos();
+        if(result.getError() != null) {
+            System.err.println("Background search failed: " + result.getError().getMessage());
+            path = null;
+        } else if(result.getPath() == null) {
+            path = null;
+        } else {
+            WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+            DirectionPath planned = result.getPath();
+            if(!resume(planned, footmanUnit.getXPosition(), footmanUnit.getYPosition())) {
+                // whatever asked for the replan still holds, so ask again from here
+                trace.record(Level.INFO, "Dropping a background path that does not pass (%d, %d)",
+                        footmanUnit.getXPosition(), footmanUnit.getYPosition());
+                asyncPlanner.submit(searchInBackground(state));
+                return;
+            }
+            path = planned;
+        }
+        updateCorridor();
+        planAlternatives(state);
+    }
+
+    /**
+     * Moves the cursor of a path to just past the given cell.
+     *
+     * @return false if the path does not pass the cell
+     */
+    private boolean resume(DirectionPath planned, int x, int y)
+    {
+        int px = planned.getX();
+        int py = planned.getY();
+        int steps = 0;
+        for(int step = 0; (px != x || py != y) && step < planned.getLength(); step++) {
+            int code = planned.codeAt(step);
+            if(code != DirectionPath.HOLD) {
+                px += DirectionPath.DX[code];
+                py += DirectionPath.DY[code];
+            }
+            steps++;
+        }
+        if(px != x || py != y) {
+            return false;
+        }
+        for(int i = 0; i < steps; i++) {
+            planned.next();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the footman's next move along the path enters the enemy footman's cell or
+     *         a resource, a move that would fail. A move onto the cell the enemy is expected to
+     *         enter is still made, since the enemy may well go elsewhere
+     */
+    private boolean stepIsBlocked(WorldView state, int footmanX, int footmanY)
+    {
+        if(path == null) {
+            return false;
+        }
+        int x = path.getX();
+        int y = path.getY();
+        if(footmanX == x && footmanY == y) {
+            if(path.isEmpty() || path.codeAt(path.getCursor()) == DirectionPath.HOLD) {
+                return false;
+            }
+            x += DirectionPath.DX[path.codeAt(path.getCursor())];
+            y += DirectionPath.DY[path.codeAt(path.getCursor())];
+        }
+        if(obstacles.isBlocked(x, y)) {
+            return true;
+        }
+        WorldView.UnitInfo enemyFootman = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        return enemyFootman != null && x == enemyFootman.getXPosition() && y == enemyFootman.getYPosition();
+    }
+
+    /**
+     * @return true if the footman has no path, e.g. after taking over from a killed leader, or
+     *         stands at the end of its path with nothing there to attack, e.g. because the
+     *         structure the path led to was destroyed
+     */
+    private boolean isStranded(WorldView state, int footmanX, int footmanY)
+    {
+        if(path == null) {
+            return true;
+        }
+        return path.isEmpty() && footmanX == path.getX() && footmanY == path.getY()
+                && attackTarget(state, footmanX, footmanY) == -1;
+    }
+
+    /**
+     * Starts the background search for routes unlike the path just planned.
+     *
+     * @param state
+     */
+    private void planAlternatives(WorldView state)
+    {
+        WorldView.UnitInfo townhallUnit = state.getUnit(townhallID);
+        if(alternativeRoutes == null || path == null || townhallUnit == null) {
+            return;
+        }
+        int[] cells = new int[path.size()];
+        int x = path.getX();
+        int y = path.getY();
+        for(int step = path.getCursor(); step < path.getLength(); step++) {
+            int code = path.codeAt(step);
+            x += DirectionPath.DX[code];
+            y += DirectionPath.DY[code];
+            cells[step - path.getCursor()] = obstacles.cell(x, y);
+        }
+        alternativeRoutes.computeAsync(obstacles.cell(path.getX(), path.getY()),
+                obstacles.cell(townhallUnit.getXPosition(), townhallUnit.getYPosition()), cells);
+    }
+
+    /**
+     * Looks for a finished alternative route the footman can join that keeps clear of the enemy
+     * footman and the cell it is expected to enter, and is not much longer than the current path.
+     *
+     * @param state
+     * @return Path onto the alternative with the cursor at the first move, or null if none is usable
+     */
+    private DirectionPath switchToAlternative(WorldView state)
+    {
+        WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+        WorldView.UnitInfo enemyFootman = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        int[] avoid = {
+            enemyFootman == null ? -1 : obstacles.cell(enemyFootman.getXPosition(), enemyFootman.getYPosition()),
+            predictedEnemyCell
+        };
+        // half again as long as what was left of the path, past that a search pays for itself
+        int maxLength = path == null ? Integer.MAX_VALUE : path.size() * 3 / 2 + 2;
+        int[] cells = alternativeRoutes.findDetour(obstacles.cell(footmanUnit.getXPosition(), footmanUnit.getYPosition()),
+                avoid, maxLength);
+        if(cells == null) {
+            return null;
+        }
+        trace.record(Level.INFO, "Switching to an alternative route of %d steps", cells.length);
+        return toPath(footmanUnit.getXPosition(), footmanUnit.getYPosition(), cells);
+    }
+
+    /**
+     * Replays the rest of the path turn by turn against a fresh forecast of the enemy footman.
+     *
+     * @param state
+     * @param currentPath Path of the lead footman
+     * @return true if the footman would run into the enemy on the way
+     */
+    private boolean conflictsWithForecast(WorldView state, DirectionPath currentPath)
+    {
+        int[] forecast = forecastEnemy(state);
+        boolean parked = forecast.length <= forecastHorizon;
+        WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+        int x = currentPath.getX();
+        int y = currentPath.getY();
+        int turn = 0;
+        if (footmanUnit.getXPosition() != x || footmanUnit.getYPosition() != y) {
+            // the footman has yet to reach the cell the last step led to
+            turn++;
+            if (SafeIntervalPlanner.isUnsafe(forecast, parked, obstacles.cell(x, y), turn)) {
+                trace.record(Level.INFO, "Replanning path because the enemy is expected at (%d, %d) next turn", x, y);
+                return true;
+            }
+        }
+        for (int step = currentPath.getCursor(); step < currentPath.getLength(); step++) {
+            int code = currentPath.codeAt(step);
+            if (code != DirectionPath.HOLD) {
+                x += DirectionPath.DX[code];
+                y += DirectionPath.DY[code];
+            }
+            turn++;
+            if (SafeIntervalPlanner.isUnsafe(forecast, parked, obstacles.cell(x, y), turn)) {
+                trace.record(Level.INFO, "Replanning path because the enemy is expected at (%d, %d) in %d turns", x, y, turn);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records where the enemy footman is this turn and predicts its next forecastHorizon moves.
+     *
+     * @param state
+     * @return Predicted cell of the enemy on this turn and the following ones, empty if it is dead
+     */
+    private int[] forecastEnemy(WorldView state)
+    {
+        WorldView.UnitInfo enemyFootman = enemyFootmanID == -1 ? null : state.getUnit(enemyFootmanID);
+        if (enemyFootman == null) {
+            return new int[0];
+        }
+        enemyForecast.observe(state.getTurnNumber(), obstacles.cell(enemyFootman.getXPosition(), enemyFootman.getYPosition()));
+        return enemyForecast.predict(forecastHorizon);
+    }
+
+    /**
+     * Rebuilds the corridor from the current path and the cell the footman is moving to.
+     */
+    private void updateCorridor()
+    {
+        corridor.clear();
+        if (path == null) {
+            return;
+        }
+        int x = path.getX();
+        int y = path.getY();
+        if (path.getCursor() > 0) {
+            corridor.add(x, y);
+        }
+        for (int step = path.getCursor(); step < path.getLength(); step++) {
+            int code = path.codeAt(step);
+            if (code == DirectionPath.HOLD) {
+                continue;
+            }
+            x += DirectionPath.DX[code];
+            y += DirectionPath.DY[code];
+            corridor.add(x, y);
+        }
+    }
+
+    /**
+     * This method is implemented for you. You should look at it to see examples of
+     * how to find units and resources in Sepia.
+     *
+     * @param state
+     * @param trigger Why the path is planned ("initial", "replan", or "lookahead" for the next
+     *                REALTIME step), recorded with the metrics
+     * @return
+     */
+    private DirectionPath findPath(WorldView state, String trigger)
+    {
+        WorldView.UnitInfo townhallUnit = state.getUnit(townhallID);
+        WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+
+        MapLocation startLoc = new MapLocation(footmanUnit.getXPosition(), footmanUnit.getYPosition(), null, 0);
+
+        MapLocation goalLoc = new MapLocation(townhallUnit.getXPosition(), townhallUnit.getYPosition(), null, 0);
+
+        MapLocation footmanLoc = null;
+        if(enemyFootmanID != -1 && state.getUnit(enemyFootmanID) != null) {
+            WorldView.UnitInfo enemyFootmanUnit = state.getUnit(enemyFootmanID);
+            footmanLoc = new MapLocation(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition(), null, 0);
+        }
+
+    	goalLoc.goal=true;
+    	startLoc.start=true;
+
+        long searchStartTime = System.nanoTime();
+        DirectionPath plan;
+        switch(searchMode) {
+            case DSTAR_LITE:
+                plan = incrementalSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
+                break;
+            case JPS:
+                plan = jumpPointSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
+                break;
+            case HPA:
+                plan = hierarchicalSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
+                break;
+            case DISTANCE_FIELD:
+                plan = distanceFieldSearch(startLoc, footmanLoc);
+                break;
+            case BIDIRECTIONAL:
+                plan = bidirectionalSearch(startLoc, goalLoc, footmanLoc);
+                break;
+            case ANYTIME:
+                plan = anytimeSearch(startLoc, goalLoc, footmanLoc);
+                break;
+            case SUBGOAL:
+                plan = subgoalSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
+                break;
+            case PARALLEL:
+                plan = parallelSearch(startLoc, goalLoc, footmanLoc);
+                break;
+            case SIPP:
+                plan = safeIntervalSearch(state, startLoc, goalLoc);
+                break;
+            case REALTIME:
+                plan = realTimeSearch(startLoc, goalLoc, footmanLoc);
+                break;
+            case MULTI_TARGET:
+                plan = multiTargetSearch(state, startLoc, footmanLoc);
+                break;
+            default:
+                plan = AstarSearch(startLoc, goalLoc, state.getXExtent(), state.getYExtent(), footmanLoc, obstacles);
+        }
+
+        long latency = System.nanoTime() - searchStartTime;
+
+        SearchStats stats = lastSearchStats();
+        metrics.recordSearch(stats, latency);
+        if(metricsSink != null) {
+            metricsSink.write(state.getTurnNumber(), searchMode.name().toLowerCase(), trigger, latency, stats,
+                    plan == null ? -1 : plan.size());
+        }
+        return plan;
+    }
+
+    /**
+     * @return Node counters of the search findPath just ran, or null if the mode does not count them
+     */
+    private SearchStats lastSearchStats()
+    {
+        switch(searchMode) {
+            case ASTAR:
+            case JPS:
+            case MULTI_TARGET:
+                return arena.getStats();
+            case BIDIRECTIONAL:
+                return bidirectionalPlanner.getStats();
+            case ANYTIME:
+                return anytimePlanner.getStats();
+            case SUBGOAL:
+                return subgoalFallback ? arena.getStats() : subgoalGraph.getStats();
+            case PARALLEL:
+                return parallelPlanner.getStats();
+            case SIPP:
+                return safeIntervalPlanner.getStats();
+            case REALTIME:
+                return realTimePlanner.getStats();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Bidirectional counterpart of AstarSearch. One frontier grows from the footman and one from
+     * the townhall until the best meeting point is provably optimal.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath bidirectionalSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        int[] cells = bidirectionalPlanner.search(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y), enemyCell);
+        if(cells == null) {
+            System.err.println("Bidirectional search exhausted a frontier");
+            throw new RuntimeException("Unable to find path!");
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Space-time counterpart of AstarSearch. Plans against the enemy footman's forecast moves
+     * instead of its current cell, holding where it is better to let the enemy pass.
+     *
+     * @param state
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @return Path from the footman with the cursor at the first move, or null if the enemy
+     *         blocks every way to the townhall for good
+     */
+    private DirectionPath safeIntervalSearch(WorldView state, MapLocation start, MapLocation goal)
+    {
+        int[] forecast = forecastEnemy(state);
+        int[] cells = safeIntervalPlanner.search(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y),
+                forecast, forecast.length <= forecastHorizon);
+        if(cells == null) {
+            trace.record(Level.WARN, "No path to the townhall around the enemy's forecast");
+            return null;
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Real-time counterpart of AstarSearch. Expands at most lookahead cells around the footman
+     * and returns the way to the most promising one; middleStep searches again every turn until
+     * a lookahead reaches the townhall.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath realTimeSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        int[] cells = realTimePlanner.search(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y), enemyCell);
+        if(cells == null) {
+            System.err.println("Real-time search ran out of cells");
+            throw new RuntimeException("Unable to find path!");
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Loads the heuristic learned in an earlier game into a new real-time planner, if it was
+     * learned on this map.
+     */
+    private void restoreLearnedHeuristic()
+    {
+        if(savedLearnedHeuristic == null) {
+            return;
+        }
+        try {
+            if(realTimePlanner.read(new DataInputStream(new ByteArrayInputStream(savedLearnedHeuristic)))) {
+                System.out.println("Restored " + realTimePlanner.getLearnedCount() + " learned heuristic values");
+            }
+        } catch(IOException e) {
+            System.err.println("Ignoring saved heuristic: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parallel counterpart of AstarSearch. The search is spread over the planner threads and
+     * this call blocks until they agree that no shorter path is left.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath parallelSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        int[] cells = parallelPlanner.search(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y), enemyCell);
+        if(cells == null) {
+            System.err.println("Parallel search ran out of nodes");
+            throw new RuntimeException("Unable to find path!");
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Subgoal graph counterpart of AstarSearch. The graph built in initialStep only knows the
+     * trees, so when the enemy footman stands on the returned path the flat search is used instead.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param xExtent Width of the map
+     * @param yExtent Height of the map
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Bitmap of the cells occupied by resources
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath subgoalSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent,
+            MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+        subgoalFallback = false;
+        if(!subgoalGraph.isCurrent()) {
+            // resources changed since the graph was built, its edges may cross or miss them
+            subgoalGraph.build();
+            trace.record(Level.INFO, "Rebuilt the subgoal graph with %d subgoals", subgoalGraph.getNodeCount());
+        }
+        int[] cells = subgoalGraph.search(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y));
+        if(cells == null) {
+            System.err.println("No route through the subgoal graph");
+            throw new RuntimeException("Unable to find path!");
+        }
+        if(enemyFootmanLoc != null) {
+            int enemyCell = obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+            for(int cell : cells) {
+                if(cell == enemyCell) {
+                    trace.record(Level.INFO, "Enemy at (%d, %d) is on the subgoal path, using a flat search",
+                            enemyFootmanLoc.x, enemyFootmanLoc.y);
+                    subgoalFallback = true;
+                    return AstarSearch(start, goal, xExtent, yExtent, enemyFootmanLoc, obstacles);
+                }
+            }
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * ARA* counterpart of AstarSearch. Starts a new anytime search and runs it for one turn's
+     * budget; middleStep resumes it on the following turns and switches to each better path.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move, an empty path if no
+     *         path was found within the budget yet, or null if there is no path
+     */
+    private DirectionPath anytimeSearch(MapLocation start, MapLocation goal, MapLocation enemyFootmanLoc)
+    {
+        int startCell = obstacles.cell(start.x, start.y);
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        anytimePlanner.start(startCell, obstacles.cell(goal.x, goal.y), enemyCell);
+        anytimePlanner.run(System.nanoTime() + planBudgetNanos);
+        return anytimePlan(startCell);
+    }
+
+    /**
+     * @param footmanCell Cell the footman is on
+     * @return The anytime planner's current path from the cell, an empty path while it has none
+     *         yet, or null if there is no path
+     */
+    private DirectionPath anytimePlan(int footmanCell)
+    {
+        if(anytimePlanner.isExhausted()) {
+            trace.record(Level.WARN, "No path to the townhall");
+            return null;
+        }
+        int[] cells = anytimePlanner.hasSolution() ? anytimePlanner.pathFrom(footmanCell) : null;
+        if(cells == null) {
+            // hold position until a round of the search has finished
+            cells = new int[0];
+        } else {
+            trace.record(Level.DEBUG, "Anytime path of %d steps, within %d/10 of optimal", cells.length,
+                    (int) Math.round(anytimePlanner.getSolutionBound() * 10));
+        }
+        return toPath(footmanCell % obstacles.getXExtent(), footmanCell / obstacles.getXExtent(), cells);
+    }
+
+    /**
+     * Jump Point Search counterpart of AstarSearch. Takes the same arguments and returns the same
+     * step-by-step path, with the cells between jump points filled in.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param xExtent Width of the map
+     * @param yExtent Height of the map
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Bitmap of the cells occupied by resources
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath jumpPointSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent,
+            MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+        int avoidCell = predictedEnemyCell;
+        prepareArena(enemyFootmanLoc, obstacles, avoidCell);
+
+        int[] cells = jumpPointPlanner.search(arena.cell(start.x, start.y), arena.cell(goal.x, goal.y));
+        if(cells == null && avoidCell != -1) {
+            // the expected cell is only a guess and may be the only way through
+            prepareArena(enemyFootmanLoc, obstacles, -1);
+            cells = jumpPointPlanner.search(arena.cell(start.x, start.y), arena.cell(goal.x, goal.y));
+        }
+        if(cells == null) {
+            System.err.println("Jump point search exhausted the open set");
+            throw new RuntimeException("Unable to find path!");
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * HPA* counterpart of AstarSearch. Searches the cluster graph built in initialStep and returns
+     * only the first leg of the route; middleStep asks for the next leg once this one is walked.
+     * Falls back to AstarSearch when the abstract graph has no route or the leg is blocked by the
+     * enemy footman.
+     *
+     * @param start Starting position of the footman
+     * @param goal MapLocation of the townhall
+     * @param xExtent Width of the map
+     * @param yExtent Height of the map
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Bitmap of the cells occupied by resources
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath hierarchicalSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent,
+            MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        int[] cells = hierarchicalPlanner.findFirstLeg(obstacles.cell(start.x, start.y), obstacles.cell(goal.x, goal.y), enemyCell);
+        while(cells != null && cells.length == 0 && hierarchicalPlanner.hasNextLeg()) {
+            cells = hierarchicalPlanner.nextLeg(enemyCell);
+        }
+        if(cells == null) {
+            trace.record(Level.WARN, "No route through the cluster graph, using a flat search");
+            return AstarSearch(start, goal, xExtent, yExtent, enemyFootmanLoc, obstacles);
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Distance field counterpart of AstarSearch. The field towards the townhall was built in
+     * initialStep; this only repairs it around the cells the enemy footman left and entered and
+     * then walks down the gradient from the footman.
+     *
+     * @param start Current position of the footman
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move, or null if there is no path
+     */
+    private DirectionPath distanceFieldSearch(MapLocation start, MapLocation enemyFootmanLoc)
+    {
+        int enemyCell = enemyFootmanLoc == null ? -1 : obstacles.cell(enemyFootmanLoc.x, enemyFootmanLoc.y);
+        if(enemyCell != lastEnemyCell) {
+            if(lastEnemyCell != -1) {
+                distanceField.setBlocked(lastEnemyCell, false);
+            }
+            if(enemyCell != -1) {
+                distanceField.setBlocked(enemyCell, true);
+            }
+            lastEnemyCell = enemyCell;
+        }
+
+        int[] cells = distanceField.pathFrom(obstacles.cell(start.x, start.y));
+        if(cells == null) {
+            trace.record(Level.WARN, "No path to the townhall");
+            return null;
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Refines the next leg of the current HPA* route from the footman's position.
+     *
+     * @param state
+     * @return Path of the leg, or a fresh plan if the leg is blocked
+     */
+    private DirectionPath nextHierarchicalLeg(WorldView state)
+    {
+        int enemyCell = -1;
+        if(enemyFootmanID != -1 && state.getUnit(enemyFootmanID) != null) {
+            WorldView.UnitInfo enemyFootmanUnit = state.getUnit(enemyFootmanID);
+            enemyCell = obstacles.cell(enemyFootmanUnit.getXPosition(), enemyFootmanUnit.getYPosition());
+        }
+        int[] cells = hierarchicalPlanner.nextLeg(enemyCell);
+        while(cells != null && cells.length == 0 && hierarchicalPlanner.hasNextLeg()) {
+            cells = hierarchicalPlanner.nextLeg(enemyCell);
+        }
+        if(cells == null) {
+            return findPath(state, "replan");
+        }
+        // legs are refined once the footman stands where the last one ended
+        WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+        return toPath(footmanUnit.getXPosition(), footmanUnit.getYPosition(), cells);
+    }
+
+    /**
+     * D* Lite counterpart of AstarSearch. The first call builds the search tree from the goal,
+     * later calls only move the start to the footman's position and update the cells the enemy
+     * footman left and entered, so a replan repairs the existing tree instead of starting over.
+     *
+     * @param start Current position of the footman
+     * @param goal MapLocation of the townhall
+     * @param xExtent Width of the map
+     * @param yExtent Height of the map
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @param obstacles Bitmap of the cells occupied by resources
+     * @return Path from the footman with the cursor at the first move, or null if there is no path
+     */
+    private DirectionPath incrementalSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent,
+            MapLocation enemyFootmanLoc, ObstacleGrid obstacles)
+    {
+        int startCell = start.y * xExtent + start.x;
+        int enemyCell = enemyFootmanLoc == null ? -1 : enemyFootmanLoc.y * xExtent + enemyFootmanLoc.x;
+
+        if(incrementalPlanner == null) {
+            incrementalPlanner = new DStarLite(xExtent, yExtent);
+            incrementalPlanner.initialize(startCell, goal.y * xExtent + goal.x, obstacles);
+            if(enemyCell != -1) {
+                incrementalPlanner.setBlocked(enemyCell, true);
+            }
+        } else {
+            // resource changes were repaired by syncObstacles at the start of the turn, the enemy footman is left
+            incrementalPlanner.moveStart(startCell);
+            if(enemyCell != lastEnemyCell) {
+                if(lastEnemyCell != -1) {
+                    incrementalPlanner.setBlocked(lastEnemyCell, false);
+                }
+                if(enemyCell != -1) {
+                    incrementalPlanner.setBlocked(enemyCell, true);
+                }
+            }
+        }
+        lastEnemyCell = enemyCell;
+
+        int[] cells = incrementalPlanner.computePath();
+        if(cells == null) {
+            trace.record(Level.WARN, "No path to the townhall");
+            return null;
+        }
+        return toPath(start.x, start.y, cells);
+    }
+
+    /**
+     * Converts cells listed in walking order into the direction path consumed by middleStep.
+     *
+     * @param startX Column of the footman
+     * @param startY Row of the footman
+     * @param cells Cell indices, first move first
+     * @return Path with the cursor at the first move
+     */
+    private DirectionPath toPath(int startX, int startY, int[] cells)
+    {
+        return new DirectionPath(startX, startY, cells, obstacles.getXExtent());
+    }
+    
+    /**
+     * Finds the landmark tables for the map: the ones already in use if the map did not change,
+     * the file named by the player data or left in saves/ by an earlier game, or new tables that
+     * are then written to saves/. Only the LANDMARK_FILES_KEPT most recently used files are kept.
+     *
+     * @param grid Obstacles of the map
+     * @return Tables with landmarkCount landmarks for the map
+     */
+    private LandmarkHeuristic prepareLandmarks(ObstacleGrid grid)
+    {
+        if(landmarks != null && landmarks.matches(grid) && landmarks.getLandmarkCount() == landmarkCount) {
+            return landmarks;
+        }
+
+        long fingerprint = grid.fingerprint();
+        File file = savedLandmarkFile != null && savedLandmarkFingerprint == fingerprint && savedLandmarkCount == landmarkCount
+                ? savedLandmarkFile
+                : new File(String.format("saves/astar-landmarks-%016x-%d.bin", fingerprint, landmarkCount));
+        if(file.isFile()) {
+            try {
+                LandmarkHeuristic mapped = LandmarkHeuristic.map(file);
+                if(mapped.matches(grid) && mapped.getLandmarkCount() == landmarkCount) {
+                    System.out.println("Mapped " + landmarkCount + " landmark tables from " + file);
+                    landmarkFile = file;
+                    // the modification time orders the files for pruneLandmarkFiles
+                    file.setLastModified(System.currentTimeMillis());
+                    return mapped;
+                }
+            } catch(IOException e) {
+                System.err.println("Rebuilding landmark tables: " + e.getMessage());
+            }
+        }
+
+        long buildStartTime = System.nanoTime();
+        LandmarkHeuristic built = LandmarkHeuristic.build(grid, landmarkCount);
+        System.out.println("Built " + landmarkCount + " landmark tables in " + (System.nanoTime() - buildStartTime)/1e9 + "s");
+        try {
+            built.write(file);
+            landmarkFile = file;
+            pruneLandmarkFiles(file);
+        } catch(IOException e) {
+            System.err.println("Could not save landmark tables: " + e.getMessage());
+            landmarkFile = null;
+        }
+        return built;
+    }
+
+    /**
+     * Deletes the least recently used landmark files in saves/ beyond LANDMARK_FILES_KEPT. At
+     * 2048x2048 one file with 8 landmarks takes over 100 MB, and every new map writes one.
+     *
+     * @param inUse File of the current map, never deleted
+     */
+    private void pruneLandmarkFiles(File inUse)
+    {
+        File[] files = new File("saves").listFiles((dir, name) -> name.startsWith("astar-landmarks-") && name.endsWith(".bin"));
+        if(files == null || files.length <= LANDMARK_FILES_KEPT) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for(int i = LANDMARK_FILES_KEPT; i < files.length; i++) {
+            if(!files[i].equals(inUse) && !files[i].delete()) {
+                System.err.println("Could not delete old landmark tables " + files[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds the bitmap of the cells occupied by resources. Called once from initialStep, later
+     * changes are applied by syncObstacles.
+     *
+     * @param state
+     * @return Grid with every tree and mine cell blocked
+     */
+    private ObstacleGrid buildObstacleGrid(WorldView state)
+    {
+        ObstacleGrid grid = new ObstacleGrid(state.getXExtent(), state.getYExtent());
+        resourceCells.clear();
+        for(Integer resourceID : state.getAllResourceIds())
+        {
+            WorldView.ResourceInfo resource = state.getResourceNode(resourceID);
+            int cell = grid.cell(resource.getXPosition(), resource.getYPosition());
+            grid.setBlocked(cell, true);
+            resourceCells.put(resourceID, cell);
+        }
+        return grid;
+    }
+
+    /**
+     * Diffs the resource nodes against the last turn and applies the cells that were freed, e.g.
+     * by trees cut down for wood, or newly blocked to the obstacle grid. The planners that copied
+     * the grid or derived tables from it only repair the part around those cells.
+     *
+     * @param state
+     */
+    private void syncObstacles(WorldView state)
+    {
+        newlyBlocked = new int[0];
+        List<Integer> resourceIds = state.getAllResourceIds();
+        if(resourceIds.size() == resourceCells.size() && resourceCells.keySet().containsAll(resourceIds)) {
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        // both background searches read the grid, so they must be off it before any bit changes
+        boolean searchWasBusy = asyncPlanner != null && asyncPlanner.isBusy();
+        if(searchWasBusy) {
+            asyncPlanner.await(Long.MAX_VALUE);
+        }
+        if(alternativeRoutes != null) {
+            alternativeRoutes.cancelAndWait();
+        }
+        Set<Integer> changed = new LinkedHashSet<>();
+        Set<Integer> present = new HashSet<>(resourceIds);
+        for(Iterator<Map.Entry<Integer, Integer>> it = resourceCells.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            if(!present.contains(entry.getKey())) {
+                it.remove();
+                obstacles.setBlocked(entry.getValue(), false);
+                changed.add(entry.getValue());
+            }
+        }
+        for(Integer resourceID : resourceIds) {
+            if(!resourceCells.containsKey(resourceID)) {
+                WorldView.ResourceInfo resource = state.getResourceNode(resourceID);
+                int cell = obstacles.cell(resource.getXPosition(), resource.getYPosition());
+                obstacles.setBlocked(cell, true);
+                resourceCells.put(resourceID, cell);
+                changed.add(cell);
+            }
+        }
+
+        int[] cells = new int[changed.size()];
+        int blockedCount = 0;
+        int index = 0;
+        for(int cell : changed) {
+            cells[index++] = cell;
+            if(obstacles.isBlocked(cell)) {
+                blockedCount++;
+            }
+        }
+        newlyBlocked = new int[blockedCount];
+        blockedCount = 0;
+        for(int cell : cells) {
+            if(obstacles.isBlocked(cell)) {
+                newlyBlocked[blockedCount++] = cell;
+            }
+        }
+        int freedCount = cells.length - blockedCount;
+        trace.record(Level.INFO, "Resources changed: %d cells blocked, %d freed", blockedCount, freedCount);
+
+        if(searchWasBusy) {
+            // the path that search found may cross the new resources
+            pathObstructed |= blockedCount > 0;
+        }
+        if(incrementalPlanner != null && incrementalPlanner.isInitialized()) {
+            // D* Lite wants the key modifier moved on before the changes seen from here
+            WorldView.UnitInfo footmanUnit = state.getUnit(footmanID);
+            if(footmanUnit != null) {
+                incrementalPlanner.moveStart(obstacles.cell(footmanUnit.getXPosition(), footmanUnit.getYPosition()));
+            }
+            for(int cell : cells) {
+                incrementalPlanner.setBlocked(cell, obstacles.isBlocked(cell));
+            }
+        }
+        for(int cell : cells) {
+            boolean blocked = obstacles.isBlocked(cell);
+            if(distanceField != null) {
+                distanceField.setBlocked(cell, blocked);
+            }
+            if(subgoalGraph != null) {
+                subgoalGraph.setBlocked(cell, blocked);
+            }
+            if(realTimePlanner != null) {
+                realTimePlanner.setBlocked(cell, blocked);
+            }
+        }
+        if(hierarchicalPlanner != null && hierarchicalPlanner.update(cells)) {
+            routeStale = true;
+        }
+        if(freedCount > 0 && landmarks != null && !landmarksStale) {
+            // a shortcut makes the old distances too long, so fall back to the Chebyshev distance
+            landmarksStale = true;
+            if(squadPlanner != null) {
+                squadPlanner.setLandmarks(null);
+            }
+            trace.record(Level.INFO, "Landmark tables are out of date, %d cells freed", freedCount);
+        }
+        for(int cell : newlyBlocked) {
+            if(corridor.contains(cell % obstacles.getXExtent(), cell / obstacles.getXExtent())) {
+                pathObstructed = true;
+            }
+        }
+        totalPlanTime += System.nanoTime() - startTime;
+    }
+
+    /**
+     * @return true if a resource appeared on the rest of the squad member's path this turn
+     */
+    private boolean isObstructed(UnitPlan plan)
+    {
+        for(int cell : newlyBlocked) {
+            if(plan.isAhead(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This is the method you will implement for the assignment. Your implementation
+     * will use the A* algorithm to compute the optimum path from the start position to
+     * a position adjacent to the goal position.
+     *
+     * Therefore your you need to find some possible adjacent steps which are in range 
+     * and are not trees or the enemy footman.
+     * Hint: ObstacleGrid obstacles marks the locations of trees
+     *
+     * You will return the path as the direction of every move, from the first space to move to
+     * to the last space to move to. If there is no path to the townhall
+     * then return null from the method and the agent will print a message and do nothing.
+     * The code to execute the plan is provided for you in the middleStep method.
+     *
+     * As an example consider the following simple map
      *
      * F - - - -
      * x x x - x
@@ -343,7 +2059,7 @@ public class AstarAgent extends Agent {
      * yExtent would be 3 for this map with valid Y coordinates in the range of [0, 2]
      * y=0 is the top most row and y=2 is the bottom most row
      *
-     * resourceLocations would be {(0,1), (1,1), (2,1), (4,1)}
+     * obstacles would mark {(0,1), (1,1), (2,1), (4,1)}
      *
      * The path would be
      *
@@ -353,175 +2069,129 @@ public class AstarAgent extends Agent {
      * (2,2)
      * (1,2)
      *
-     * Notice how the initial footman position and the townhall position are not included in the path stack
+     * Notice how the initial footman position and the townhall position are not included in the path
      *
      * @param start Starting position of the footman
      * @param goal MapLocation of the townhall
      * @param xExtent Width of the map 0,4
      * @param yExtent Height of the map 0,2
-     * @param resourceLocations Set of positions occupied by resources
-     * @return Stack of positions with top of stack being first move in plan
-     */
-    private Stack<MapLocation> AstarSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent, MapLocation enemyFootmanLoc, 
-    		Set<MapLocation> resourceLocations)
-    {
-
-    	ArrayList<MapLocation> openList = new ArrayList<>();
-    	ArrayList<MapLocation> closeList = new ArrayList<>();
-    	ArrayList<MapLocation> checkedList = new ArrayList<>();
-    	Stack<MapLocation> locationStack = new Stack<>();
-    	MapLocation currentNode = start;
-    	resourceLocations.stream().forEach(t->t.solid=true);
-    	
-    	boolean goalReached = false;
-    	
+     * @param obstacles Bitmap of the cells occupied by resources
+     * @return Path from the footman with the cursor at the first move
+     */
+    private DirectionPath AstarSearch(MapLocation start, MapLocation goal, int xExtent, int yExtent, MapLocation enemyFootmanLoc, 
+    		ObstacleGrid obstacles)
+    {
+    	int avoidCell = predictedEnemyCell;
+    	prepareArena(enemyFootmanLoc, obstacles, avoidCell);
+
+    	// the search itself is shared with the squad's worker threads
+    	int[] cells = GridAstar.search(arena, arena.cell(start.x, start.y), arena.cell(goal.x, goal.y),
+    			landmarksStale ? null : landmarks);
+    	if(cells == null && avoidCell != -1) {
+    		// the expected cell is only a guess and may be the only way through
+    		prepareArena(enemyFootmanLoc, obstacles, -1);
+    		cells = GridAstar.search(arena, arena.cell(start.x, start.y), arena.cell(goal.x, goal.y),
+    				landmarksStale ? null : landmarks);
+    	}
+    	if(cells == null) {
+    		System.err.println("Open set exhausted before reaching the goal");
+    		throw new RuntimeException("Unable to find path!");
+    	}
+
+    	DirectionPath plan = toPath(start.x, start.y, cells);
+    	trace.record(Level.TRACE, "Planned %d steps from (%d, %d)", plan.size(), start.x, start.y);
+        return plan;
+    }
+
+    /**
+     * Multi-target counterpart of AstarSearch. Instead of searching towards the townhall's own
+     * cell, a single search stops at the first free cell beside any enemy structure it reaches,
+     * so a townhall walled in on the near side costs no search around it when a barracks is closer.
+     *
+     * @param state
+     * @param start Starting position of the footman
+     * @param enemyFootmanLoc Position of the enemy footman or null if there is none
+     * @return Path from the footman with the cursor at the first move, ending beside a structure
+     */
+    private DirectionPath multiTargetSearch(WorldView state, MapLocation start, MapLocation enemyFootmanLoc)
+    {
+    	int[] structureCells = new int[structureIDs.size()];
     	int count = 0;
-    	while(goalReached == false && count< 3600) {
-    		int col = currentNode.x;
-    		int row = currentNode.y;
-    		
-    		currentNode.setAsChecked();
-    		checkedList.add(currentNode);
-    		MapLocation[] currentNodeTemp = {currentNode};
-    		openList.removeIf(t->(t.x==currentNodeTemp[0].x && t.y==currentNodeTemp[0].y));
-    		
-    		//Open Top Node
-    		if(row-1>=0) {
-    			openNode(new MapLocation(col,row-1,null,0), openList, currentNode,goal,resourceLocations,closeList);
+    	for(int unitID : structureIDs) {
+    		WorldView.UnitInfo structure = state.getUnit(unitID);
+    		if(structure != null) {
+    			structureCells[count++] = obstacles.cell(structure.getXPosition(), structure.getYPosition());
     		}
-    		//Open the Left Node
-    		if(col-1>=0) {
-    			openNode(new MapLocation(col-1,row,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		//Open Down Node
-    		if(row+1<yExtent) {
-    			openNode(new MapLocation(col,row+1,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		//Open Right Node
-    		if(col+1<xExtent) {
-    			openNode(new MapLocation(col+1,row,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		
-    		if(col-1>=0) {
-    			// UP Left Diagonal
-        		openNode(new MapLocation(col-1,row-1,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		
-    		if(col-1>=0) {
-        		// down left Diagonal
-        		openNode(new MapLocation(col-1,row+1,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		
-    		if(col+1<yExtent) {
-    			// Down Right Diagonal
-        		openNode(new MapLocation(col+1,row+1,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		
-    		if(col+1<xExtent) {
-        		// UP Right Diagonal
-        		openNode(new MapLocation(col+1,row-1,null,0), openList, currentNode,goal,resourceLocations,closeList);
-    		}
-    		
-    		
-    		//Find the Best Node
-    		int bestNodeIndex=0;
-    		int bestNodefCost=999;
-    		for(int i=0; i< openList.size();i++) {
-    			if(!closeList.isEmpty()) {
-    				closeList.stream().forEach(item->{
-    					openList.removeIf(it->(it.x==item.x && it.y==item.y));
-    				});
-    			}
-    			//Check's if this node's F's cost is better
-    			if(openList.get(i).cost < bestNodefCost) {
-    				bestNodeIndex = i;
-    				bestNodefCost = openList.get(i).cost;
-    			}
-    			else if(openList.get(i).cost == bestNodefCost) {
-    				if(openList.get(i).gCost < openList.get(bestNodeIndex).gCost) {
-    					bestNodeIndex = i;
-    				}
-    			}
-    		}
-    		// After the loop we get the best node 
-    		currentNode= openList.get(bestNodeIndex);
-    		closeList.add(currentNode);
-    		locationStack.add(currentNode);
-    		
-
-    		if(currentNode.x==goal.x && currentNode.y==goal.y) {
-    			System.err.println("goal Node Reached:: "+ goal.toString());
-    			goalReached = true;
-    		}
-    		
-    		count++;
     	}
-    	
-    	if(count>=3600) {
-    		System.err.println("count exceeded:: ");
+    	structureCells = Arrays.copyOf(structureCells, count);
+
+    	int avoidCell = predictedEnemyCell;
+    	int[] cells = nearestStructureSearch(start, enemyFootmanLoc, avoidCell, structureCells);
+    	if(cells == null && avoidCell != -1) {
+    		// the expected cell is only a guess and may be the only way through
+    		cells = nearestStructureSearch(start, enemyFootmanLoc, -1, structureCells);
+    	}
+    	if(cells == null) {
+    		System.err.println("Open set exhausted before reaching a cell beside an enemy structure");
     		throw new RuntimeException("Unable to find path!");
-    		
     	}
-    	
-    	Collections.reverse(locationStack);
-    	locationStack.remove(0);
-    	System.err.println("locationSTack:: "+ locationStack.toString());
-        return locationStack;
+
+    	DirectionPath plan = toPath(start.x, start.y, cells);
+    	trace.record(Level.TRACE, "Planned %d steps from (%d, %d)", plan.size(), start.x, start.y);
+        return plan;
     }
-    
-    private void openNode(MapLocation loc, ArrayList<MapLocation> openList, MapLocation currentNode, MapLocation goal, 
-    		Set<MapLocation> resourceLocations,ArrayList<MapLocation> closeList) {
-    	
-    	openList.stream().forEach(item->{
-			if(loc.x==item.x && loc.y==item.y) {
-				loc.checked=true;
-				loc.opened=true;
-			}
-		});
-    	
-    	closeList.stream().forEach(item->{
-			if(loc.x==item.x && loc.y==item.y) {
-				loc.checked=true;
-				loc.opened=true;
-			}
-		});
-    	
-    	if(loc.opened == false && loc.checked==false && loc.solid==false) {
-    		loc.setAsOpen();
-    		loc.setAsChecked();
-    		boolean[] canAddtoOpenList = {true};
-    		resourceLocations.stream().forEach(resourceLocation->{
-    			
-    			if(resourceLocation.x == loc.x && resourceLocation.y == loc.y) {
-    				canAddtoOpenList[0]=false;
-    			}
-    		});
-    		if(canAddtoOpenList[0]) {
-        		openList.add(loc);
-    		}
-    		getCost(loc,currentNode,goal);
+
+    private int[] nearestStructureSearch(MapLocation start, MapLocation enemyFootmanLoc, int avoidCell, int[] structureCells)
+    {
+    	prepareArena(enemyFootmanLoc, obstacles, avoidCell);
+    	for(int cell : structureCells) {
+    		// structures are walls to walk around, not cells to end on
+    		arena.block(cell);
     	}
+    	return GridAstar.searchNearest(arena, arena.cell(start.x, start.y), structureCells);
     }
-    
-    
-    private void getCost(MapLocation loc, MapLocation start, MapLocation goal) {
-    	// G Cost
-    	int xDist = Math.abs(loc.x - start.x);
-    	int yDist = Math.abs(loc.y - start.y);
-    	loc.gCost = Math.max(xDist, yDist);
-    	//loc.gCost = xDist + yDist;
-    	
-    	//H Cost
-    	xDist = Math.abs(loc.x - goal.x);
-    	yDist = Math.abs(loc.y - goal.y);
-    	// Chebyshev distance (need to convert to heuristic method)
-    	loc.hCost = Math.max(xDist, yDist);
-    	//loc.hCost = xDist-yDist;
-    	
-    	//F Cost
-    	loc.cost = loc.gCost + loc.hCost;
+
+    /**
+     * @return The unit for the footman to attack from its cell: the townhall when it is next to
+     *         it, in MULTI_TARGET mode any other enemy structure next to it, otherwise -1
+     */
+    private int attackTarget(WorldView state, int footmanX, int footmanY)
+    {
+        List<Integer> targets = searchMode == SearchMode.MULTI_TARGET ? structureIDs : Collections.singletonList(townhallID);
+        int targetID = -1;
+        for(int unitID : targets) {
+            WorldView.UnitInfo unit = state.getUnit(unitID);
+            if(unit != null && Math.abs(footmanX - unit.getXPosition()) <= 1 && Math.abs(footmanY - unit.getYPosition()) <= 1
+                    && (targetID == -1 || unitID == townhallID)) {
+                targetID = unitID;
+            }
+        }
+        return targetID;
     }
-    
+
+    /**
+     * Starts a new search in the shared arena and marks the enemy footman as blocked.
+     * Trees are already in the arena's obstacle grid.
+     *
+     * @param avoidCell Cell the enemy footman is expected to enter, blocked as well, or -1
+     */
+    private void prepareArena(MapLocation enemyFootmanLoc, ObstacleGrid obstacles, int avoidCell)
+    {
+    	// the arena is created for the map in initialStep and reused by every search
+    	if(arena == null || arena.getObstacles() != obstacles) {
+    		arena = new SearchArena(obstacles);
+    		jumpPointPlanner = new JumpPointSearch(arena);
+    	}
+    	arena.reset();
+
+    	if(enemyFootmanLoc != null) {
+    		arena.block(arena.cell(enemyFootmanLoc.x, enemyFootmanLoc.y));
+    		if(avoidCell != -1) {
+    			arena.block(avoidCell);
+    		}
+    	}
+    }
+
 
     /**
      * Primitive actions take a direction (e.g. Direction.NORTH, Direction.NORTHEAST, etc)
@@ -0,0 +1,245 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A few routes to the goal that differ from the planned one, computed on a background thread so
+ * that a unit whose route gets blocked can switch to one of them without searching.
+ *
+ * Routes come from the penalty method: after every route found, each of its cells costs one more
+ * to enter, so the next A* search prefers cells no route used yet as long as the detour is cheap.
+ * A route sharing more than MAX_SHARED of its cells with the ones before it is dropped.
+ *
+ * The unit has usually walked on before it needs an alternative, so {@link #findDetour} joins the
+ * route at the last of its cells next to the unit instead of at its start. For the same reason
+ * the last finished routes stay in use until the search for the next route's alternatives ends.
+ */
+public class AlternativeRoutes {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    // share of a route's cells that may lie on earlier routes
+    private static final double MAX_SHARED = 0.8;
+    // searches per wanted route before giving up on finding more distinct ones
+    private static final int ATTEMPTS_PER_ROUTE = 3;
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent;
+    private final int count;
+    private final ExecutorService executor;
+
+    // only touched on the executor thread
+    private final SearchArena arena;
+    private final int[] uses;
+
+    private Future<List<int[]>> pending;
+    private List<int[]> routes = Collections.emptyList();
+
+    /**
+     * @param obstacles Obstacles shared with the agent, which calls {@link #cancelAndWait} before changing them
+     * @param count Number of alternative routes to look for
+     */
+    public AlternativeRoutes(ObstacleGrid obstacles, int count) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.count = count;
+        this.arena = new SearchArena(obstacles);
+        this.uses = new int[obstacles.cellCount()];
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "astar-alternatives");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts looking for alternatives to a newly planned route. The alternatives found for an
+     * earlier route are kept until these are ready.
+     *
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach
+     * @param route Cells of the planned route, excluding the start and the goal
+     */
+    public void computeAsync(int startCell, int goalCell, int[] route) {
+        cancel();
+        int[] primary = route.clone();
+        pending = executor.submit(() -> compute(startCell, goalCell, primary));
+    }
+
+    /**
+     * Stops the search in progress, if any. Finished routes are kept.
+     */
+    public void cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    /**
+     * Stops the search in progress and waits for it to end, so the caller can change the obstacle
+     * grid. Finished routes are kept; {@link #findDetour} skips those a resource appeared on.
+     */
+    public void cancelAndWait() {
+        cancel();
+        try {
+            // the executor has one thread, so this runs once the cancelled search has returned
+            executor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return The alternatives of the last background search that finished, none if none did. Never waits
+     */
+    public List<int[]> getRoutes() {
+        if (pending != null && pending.isDone()) {
+            try {
+                routes = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            pending = null;
+        }
+        return routes;
+    }
+
+    /**
+     * Finds the shortest way onto one of the finished alternatives that avoids the given cells.
+     *
+     * @param unitCell Cell of the unit
+     * @param avoid Cells the rest of the route must not enter, e.g. the enemy's and where it goes next; -1 is ignored
+     * @param maxLength Longest detour worth taking instead of a new search
+     * @return Cells to move through in order, excluding the unit's cell and the goal, or null if
+     *         no alternative is usable, e.g. because a resource appeared on it since it was found
+     */
+    public int[] findDetour(int unitCell, int[] avoid, int maxLength) {
+        int[] best = null;
+        for (int[] route : getRoutes()) {
+            // the latest cell of the route the unit can step onto, or stands on
+            int join = -1;
+            for (int i = route.length - 1; i >= 0 && join < 0; i--) {
+                if (distance(route[i], unitCell) <= 1) {
+                    join = i;
+                }
+            }
+            if (join < 0) {
+                continue;
+            }
+            int from = route[join] == unitCell ? join + 1 : join;
+            int length = route.length - from;
+            if (length > maxLength || (best != null && length >= best.length) || enters(route, from, avoid)) {
+                continue;
+            }
+            int[] detour = new int[length];
+            System.arraycopy(route, from, detour, 0, length);
+            best = detour;
+        }
+        return best;
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private List<int[]> compute(int startCell, int goalCell, int[] primary) {
+        Arrays.fill(uses, 0);
+        for (int cell : primary) {
+            uses[cell]++;
+        }
+        List<int[]> routes = new ArrayList<>(count);
+        for (int attempt = 0; attempt < count * ATTEMPTS_PER_ROUTE && routes.size() < count; attempt++) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int[] route = search(startCell, goalCell);
+            if (route == null) {
+                break;
+            }
+            int shared = 0;
+            for (int cell : route) {
+                if (uses[cell] > 0) {
+                    shared++;
+                }
+                uses[cell]++;
+            }
+            if (shared <= MAX_SHARED * route.length) {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * A* where entering a cell costs one plus the number of routes already through it.
+     */
+    private int[] search(int startCell, int goalCell) {
+        arena.reset();
+        OpenSet openSet = arena.getOpenSet();
+        arena.open(startCell, 0, -1, distance(startCell, goalCell));
+        while (!openSet.isEmpty()) {
+            int currentCell = openSet.pop();
+            if (currentCell == goalCell) {
+                int length = 0;
+                for (int cell = arena.getCameFrom(goalCell); cell != startCell && cell != -1; cell = arena.getCameFrom(cell)) {
+                    length++;
+                }
+                int[] cells = new int[length];
+                for (int cell = arena.getCameFrom(goalCell); cell != startCell && cell != -1; cell = arena.getCameFrom(cell)) {
+                    cells[--length] = cell;
+                }
+                return cells;
+            }
+            arena.close(currentCell);
+
+            int col = currentCell % xExtent;
+            int row = currentCell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int x = col + NEIGHBOUR_X[i];
+                int y = row + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(x, y)) {
+                    continue;
+                }
+                int cell = y * xExtent + x;
+                int nextG = arena.getGCost(currentCell) + 1 + (cell == goalCell ? 0 : uses[cell]);
+                if (arena.getState(cell) == SearchArena.CLOSED || nextG >= arena.getGCost(cell)) {
+                    continue;
+                }
+                arena.open(cell, nextG, currentCell, nextG + distance(cell, goalCell));
+            }
+        }
+        return null;
+    }
+
+    private boolean enters(int[] route, int from, int[] avoid) {
+        for (int i = from; i < route.length; i++) {
+            if (obstacles.isBlocked(route[i])) {
+                return true;
+            }
+            for (int cell : avoid) {
+                if (route[i] == cell) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int distance(int a, int b) {
+        return Math.max(Math.abs(a % xExtent - b % xExtent), Math.abs(a / xExtent - b / xExtent));
+    }
+}
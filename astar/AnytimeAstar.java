@@ -0,0 +1,304 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Anytime Repairing A* (Likhachev, Gordon and Thrun 2003) that can be paused at a deadline and
+ * resumed on a later turn.
+ *
+ * Each round is a weighted A* with f = g + epsilon * h and yields a path at most epsilon times
+ * longer than the shortest one. The first round uses a large epsilon and finishes quickly; every
+ * later round lowers epsilon and only re-expands the cells whose costs improved, until a round with
+ * epsilon 1 proves the path optimal. {@link #run(long)} works until a wall-clock deadline and keeps
+ * its state, so a search spread over several turns never holds up a single turn.
+ *
+ * The search runs backwards, from the free cells around the goal towards the unit. Every cell it
+ * has reached points at a neighbour closer to the goal, so a path can be read off from any cell on
+ * the current path, e.g. wherever the unit has moved to while the search kept improving.
+ *
+ * Like {@link SearchArena}, the per-cell arrays are stamped with the search they were written in,
+ * so {@link #start} leaves the last search's values in place instead of clearing the whole map.
+ */
+public class AnytimeAstar {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    // epsilon is kept in tenths so the open set keys stay integers
+    private static final int EPSILON_STEP = 5;
+    private static final int DEADLINE_CHECK_INTERVAL = 32;
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private final int initialEpsilon;
+    private final int[] gCost;
+    private final int[] parent;
+    private final int[] closedRound;
+    // search that last wrote gCost, parent and closedRound of the cell
+    private final int[] stamp;
+    private final boolean[] inconsistent;
+    private final int[] inconsistentCells;
+    private final int[] reopenBuffer;
+    private final OpenSet openSet;
+    private final SearchStats stats = new SearchStats();
+
+    private int inconsistentCount;
+    private int startCell = -1;
+    private int goalCell = -1;
+    private int enemyCell = -1;
+    private int epsilon;
+    private int round;
+    private int search;
+    private int solutionEpsilon;
+    private boolean finished;
+    private boolean exhausted;
+
+    /**
+     * @param obstacles Static obstacles
+     * @param initialEpsilon Suboptimality bound of the first round, at least 1
+     */
+    public AnytimeAstar(ObstacleGrid obstacles, double initialEpsilon) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        this.initialEpsilon = Math.max(10, (int) Math.round(initialEpsilon * 10));
+        int cellCount = xExtent * yExtent;
+        gCost = new int[cellCount];
+        parent = new int[cellCount];
+        closedRound = new int[cellCount];
+        stamp = new int[cellCount];
+        inconsistent = new boolean[cellCount];
+        inconsistentCells = new int[cellCount];
+        reopenBuffer = new int[cellCount];
+        openSet = new OpenSet(cellCount);
+    }
+
+    /**
+     * Starts a new search. Nothing is expanded until {@link #run(long)} is called.
+     *
+     * @param startCell Cell of the unit
+     * @param goalCell Cell of the goal. It is treated as blocked, the path ends next to it
+     * @param enemyCell Cell that is blocked for this search, or -1
+     */
+    public void start(int startCell, int goalCell, int enemyCell) {
+        this.startCell = startCell;
+        this.goalCell = goalCell;
+        this.enemyCell = enemyCell;
+        search++;
+        if (search == Integer.MAX_VALUE) {
+            // stamps would wrap around, so pay for one real clear
+            Arrays.fill(stamp, 0);
+            search = 1;
+        }
+        for (int i = 0; i < inconsistentCount; i++) {
+            inconsistent[inconsistentCells[i]] = false;
+        }
+        inconsistentCount = 0;
+        openSet.clear();
+        stats.reset();
+        epsilon = initialEpsilon;
+        round = 1;
+        solutionEpsilon = 0;
+        finished = false;
+        exhausted = false;
+
+        int gx = goalCell % xExtent;
+        int gy = goalCell / xExtent;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int x = gx + NEIGHBOUR_X[i];
+            int y = gy + NEIGHBOUR_Y[i];
+            if (isFree(x, y)) {
+                int cell = y * xExtent + x;
+                touch(cell);
+                gCost[cell] = 0;
+                openSet.push(cell, key(cell), 0);
+                stats.countGenerated();
+            }
+        }
+    }
+
+    /**
+     * Continues the search until the deadline, the optimal path is known or the unit turns out to
+     * be cut off from the goal.
+     *
+     * @param deadlineNanos Value of System.nanoTime() at which to stop
+     * @return true if a round finished during this call, i.e. a better path is available
+     */
+    public boolean run(long deadlineNanos) {
+        boolean improved = false;
+        int sinceCheck = 0;
+        while (!finished) {
+            if (isRoundComplete()) {
+                if (g(startCell) == Integer.MAX_VALUE) {
+                    // nothing left to expand and the unit was never reached
+                    exhausted = true;
+                    finished = true;
+                    break;
+                }
+                solutionEpsilon = epsilon;
+                improved = true;
+                if (epsilon <= 10) {
+                    finished = true;
+                    break;
+                }
+                nextRound();
+            } else {
+                expand(openSet.pop());
+            }
+
+            if (++sinceCheck == DEADLINE_CHECK_INTERVAL) {
+                sinceCheck = 0;
+                if (System.nanoTime() >= deadlineNanos) {
+                    break;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * @return true once a round has finished, so {@link #pathFrom(int)} has a bounded path
+     */
+    public boolean hasSolution() {
+        return solutionEpsilon != 0;
+    }
+
+    /**
+     * @return Suboptimality bound of the current path, e.g. 1.5, or 0 if there is no path yet
+     */
+    public double getSolutionBound() {
+        return solutionEpsilon / 10.0;
+    }
+
+    /**
+     * @return true if there is nothing left to improve, either because the path is optimal or because there is none
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return true if the search finished without reaching the unit
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return Counters summed over every round of the current search
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param cell Cell of the unit, either the start or a cell the unit reached by following an earlier path
+     * @return Cells to move through in order, excluding the cell and ending next to the goal, or
+     *         null if the search has not reached the cell
+     */
+    public int[] pathFrom(int cell) {
+        if (g(cell) == Integer.MAX_VALUE) {
+            return null;
+        }
+        // following the parents only ever lowers g, so the chain is at most g[cell] long
+        int[] cells = new int[gCost[cell]];
+        int length = 0;
+        for (int next = parent[cell]; next != -1 && length < cells.length; next = parent[next]) {
+            cells[length++] = next;
+        }
+        return length == cells.length ? cells : Arrays.copyOf(cells, length);
+    }
+
+    private boolean isRoundComplete() {
+        int startG = g(startCell);
+        return openSet.isEmpty() || (startG != Integer.MAX_VALUE && (long) startG * 10 <= openSet.peekPrimary());
+    }
+
+    private void expand(int cell) {
+        closedRound[cell] = round;
+        stats.countExpanded();
+
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        int nextG = gCost[cell] + 1;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (!isFree(nx, ny)) {
+                continue;
+            }
+            int next = ny * xExtent + nx;
+            if (nextG >= g(next)) {
+                continue;
+            }
+            touch(next);
+            gCost[next] = nextG;
+            parent[next] = cell;
+            if (closedRound[next] != round) {
+                openSet.push(next, key(next), nextG);
+                stats.countGenerated();
+                stats.observeOpenSetSize(openSet.size());
+            } else if (!inconsistent[next]) {
+                // already expanded this round, it is reconsidered in the next one
+                inconsistent[next] = true;
+                inconsistentCells[inconsistentCount++] = next;
+            }
+        }
+    }
+
+    /**
+     * Lowers epsilon, moves the inconsistent cells back into the open set and re-keys every queued
+     * cell for the new epsilon.
+     */
+    private void nextRound() {
+        epsilon = Math.max(10, epsilon - EPSILON_STEP);
+        round++;
+
+        int count = openSet.size();
+        for (int i = 0; i < count; i++) {
+            reopenBuffer[i] = openSet.cellAt(i);
+        }
+        openSet.clear();
+        for (int i = 0; i < inconsistentCount; i++) {
+            int cell = inconsistentCells[i];
+            inconsistent[cell] = false;
+            reopenBuffer[count++] = cell;
+        }
+        inconsistentCount = 0;
+        for (int i = 0; i < count; i++) {
+            openSet.push(reopenBuffer[i], key(reopenBuffer[i]), gCost[reopenBuffer[i]]);
+        }
+    }
+
+    /**
+     * @return 10 * (g + epsilon * h), with h the Chebyshev distance to the unit
+     */
+    private int key(int cell) {
+        int h = Math.max(Math.abs(cell % xExtent - startCell % xExtent), Math.abs(cell / xExtent - startCell / xExtent));
+        return gCost[cell] * 10 + epsilon * h;
+    }
+
+    /**
+     * @return g of the cell in the current search, Integer.MAX_VALUE if it has not reached the cell
+     */
+    private int g(int cell) {
+        return stamp[cell] == search ? gCost[cell] : Integer.MAX_VALUE;
+    }
+
+    private void touch(int cell) {
+        if (stamp[cell] != search) {
+            stamp[cell] = search;
+            gCost[cell] = Integer.MAX_VALUE;
+            parent[cell] = -1;
+            closedRound[cell] = 0;
+        }
+    }
+
+    private boolean isFree(int x, int y) {
+        if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+            return false;
+        }
+        int cell = y * xExtent + x;
+        return cell != goalCell && cell != enemyCell && !obstacles.isBlocked(cell);
+    }
+}
@@ -0,0 +1,165 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs path searches on a dedicated thread so the turn that asks for a path never waits for it.
+ *
+ * One search runs at a time. A finished search publishes its result through an AtomicReference
+ * and the caller takes it on a later turn, so the caller only ever sees no path or a complete one.
+ * Submitting a new search or cancelling makes the result of any earlier search stale; a stale
+ * result is dropped instead of being handed out, even if its search was already running. A stale
+ * search that has not started yet is skipped, one that has keeps the planner busy until it ends.
+ */
+public class AsyncPlanner {
+
+    /**
+     * Outcome of one background search.
+     */
+    public static final class Result {
+
+        private final long generation;
+        private final DirectionPath path;
+        private final RuntimeException error;
+        private final long latencyNanos;
+
+        Result(long generation, DirectionPath path, RuntimeException error, long latencyNanos) {
+            this.generation = generation;
+            this.path = path;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        /**
+         * @return The path the search returned, null if it found none or failed
+         */
+        public DirectionPath getPath() {
+            return path;
+        }
+
+        /**
+         * @return What the search threw, or null if it returned normally
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        /**
+         * @return Wall-clock time the search took on the planner thread
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final AtomicReference<Result> ready = new AtomicReference<>();
+    // only changed by the submitting thread; a search keeps the value it was submitted with
+    private volatile long generation;
+    private Future<?> pending;
+
+    public AsyncPlanner() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "astar-planner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a search, dropping the result of the one before it.
+     *
+     * @param search Runs on the planner thread; it must only read state the caller will not change meanwhile
+     */
+    public void submit(Callable<DirectionPath> search) {
+        cancel();
+        long submitted = generation;
+        pending = executor.submit(() -> {
+            if (submitted != generation) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            DirectionPath path = null;
+            RuntimeException error = null;
+            try {
+                path = search.call();
+            } catch (RuntimeException e) {
+                error = e;
+            } catch (Exception e) {
+                error = new RuntimeException(e);
+            }
+            ready.set(new Result(submitted, path, error, System.nanoTime() - startTime));
+        });
+    }
+
+    /**
+     * @return true if a search was submitted and has not finished yet
+     */
+    public boolean isBusy() {
+        return pending != null && !pending.isDone();
+    }
+
+    /**
+     * Waits for the search in progress, for when the caller cannot go on without its result. Also
+     * hands the planner thread the CPU on a machine with no core to spare.
+     *
+     * @param timeoutNanos Longest time to wait
+     * @return true if no search is in progress any more
+     */
+    public boolean await(long timeoutNanos) {
+        if (pending == null) {
+            return true;
+        }
+        try {
+            pending.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException | TimeoutException e) {
+            // a failed search reports through its result, a slow one is still pending
+        }
+        return !isBusy();
+    }
+
+    /**
+     * @return The result of the last submitted search if it finished since the last call, otherwise null. Never waits
+     */
+    public Result poll() {
+        Result result = ready.getAndSet(null);
+        if (result == null || result.generation != generation) {
+            return null;
+        }
+        pending = null;
+        return result;
+    }
+
+    /**
+     * Drops the search in progress. It may still run to the end, and {@link #isBusy} says so until
+     * it does, but its result is never handed out.
+     */
+    public void cancel() {
+        generation++;
+        ready.set(null);
+    }
+
+    /**
+     * Stops the planner thread and waits for a running search to end, however long it takes, so
+     * the caller can replace what that search reads.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Bidirectional A* on the 8-connected grid where every move costs 1.
+ *
+ * One search runs forward from the start towards the goal and one backward from the goal towards
+ * the start, each with its own arena and the Chebyshev distance to the other end as heuristic.
+ * Whenever a cell reached by one side has also been reached by the other, the combined cost is a
+ * candidate for the best path. The search stops once that cost is no larger than the smallest
+ * f-cost left in either open set; with a consistent heuristic no cheaper path can exist then.
+ */
+public class BidirectionalAstar {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final SearchArena forward;
+    private final SearchArena backward;
+    private final SearchStats stats = new SearchStats();
+    private final int xExtent, yExtent;
+
+    private int bestCost;
+    private int meetingCell;
+
+    public BidirectionalAstar(ObstacleGrid obstacles) {
+        forward = new SearchArena(obstacles);
+        backward = new SearchArena(obstacles);
+        xExtent = obstacles.getXExtent();
+        yExtent = obstacles.getYExtent();
+    }
+
+    /**
+     * @return Counters of the last search, summed over both directions
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach
+     * @param enemyCell Cell that is blocked for this search only, or -1
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell, int enemyCell) {
+        forward.reset();
+        backward.reset();
+        if (enemyCell >= 0) {
+            forward.block(enemyCell);
+            backward.block(enemyCell);
+        }
+
+        bestCost = Integer.MAX_VALUE;
+        meetingCell = -1;
+        OpenSet forwardOpen = forward.getOpenSet();
+        OpenSet backwardOpen = backward.getOpenSet();
+        forward.open(startCell, 0, -1, distance(startCell, goalCell));
+        backward.open(goalCell, 0, -1, distance(goalCell, startCell));
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+            if (bestCost <= Math.max(forwardOpen.peekPrimary(), backwardOpen.peekPrimary())) {
+                break;
+            }
+            // grow the smaller frontier
+            if (forwardOpen.size() <= backwardOpen.size()) {
+                expand(forward, backward, goalCell);
+            } else {
+                expand(backward, forward, startCell);
+            }
+        }
+
+        stats.reset();
+        stats.add(forward.getStats());
+        stats.add(backward.getStats());
+
+        if (meetingCell < 0) {
+            return null;
+        }
+        return buildPath(startCell, goalCell);
+    }
+
+    private void expand(SearchArena side, SearchArena other, int target) {
+        int current = side.getOpenSet().pop();
+        side.close(current);
+
+        int x = current % xExtent;
+        int y = current / xExtent;
+        int nextG = side.getGCost(current) + 1;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (nx < 0 || ny < 0 || nx >= xExtent || ny >= yExtent) {
+                continue;
+            }
+            int cell = ny * xExtent + nx;
+            if (side.isBlocked(cell) || side.getState(cell) == SearchArena.CLOSED || nextG >= side.getGCost(cell)) {
+                continue;
+            }
+            side.open(cell, nextG, current, nextG + distance(cell, target));
+
+            int otherG = other.getGCost(cell);
+            if (otherG != Integer.MAX_VALUE && nextG + otherG < bestCost) {
+                bestCost = nextG + otherG;
+                meetingCell = cell;
+            }
+        }
+    }
+
+    /**
+     * Joins the forward chain from the start to the meeting cell with the backward chain from
+     * the meeting cell to the goal.
+     */
+    private int[] buildPath(int startCell, int goalCell) {
+        int[] cells = new int[Math.max(0, bestCost - 1)];
+        int forwardLength = forward.getGCost(meetingCell);
+
+        // cells[i] is the cell reached after i + 1 moves
+        int index = forwardLength - 1;
+        for (int cell = meetingCell; cell != startCell; cell = forward.getCameFrom(cell)) {
+            if (index < cells.length) {
+                cells[index] = cell;
+            }
+            index--;
+        }
+        index = forwardLength;
+        for (int cell = backward.getCameFrom(meetingCell); cell != goalCell && cell != -1; cell = backward.getCameFrom(cell)) {
+            cells[index++] = cell;
+        }
+        return cells;
+    }
+
+    private int distance(int a, int b) {
+        return Math.max(Math.abs(a % xExtent - b % xExtent), Math.abs(a / xExtent - b / xExtent));
+    }
+}
@@ -0,0 +1,228 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Incremental planner (D* Lite, Koenig and Likhachev 2002) for the 8-connected grid where every move costs 1.
+ *
+ * The search runs backwards from the goal, so the search tree stays valid while the footman walks
+ * along the path. When cells change occupancy only the vertices around those cells are updated and
+ * {@link #computePath()} repairs the part of the tree that depended on them instead of searching
+ * from scratch.
+ */
+public class DStarLite {
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final int xExtent, yExtent;
+    private ObstacleGrid blocked;
+    private final int[] g;
+    private final int[] rhs;
+    private final OpenSet openSet;
+
+    private int start, lastStart, goal;
+    private int keyModifier;
+    private boolean initialized;
+
+    public DStarLite(int xExtent, int yExtent) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        int cellCount = xExtent * yExtent;
+        g = new int[cellCount];
+        rhs = new int[cellCount];
+        openSet = new OpenSet(cellCount);
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Throws away any previous search and starts a new one.
+     *
+     * @param startCell Cell of the unit that will follow the path
+     * @param goalCell Cell the path leads to
+     * @param obstacles Blocked cells. The grid is copied, later changes are reported through setBlocked
+     */
+    public void initialize(int startCell, int goalCell, ObstacleGrid obstacles) {
+        blocked = new ObstacleGrid(obstacles);
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        openSet.clear();
+
+        start = lastStart = startCell;
+        goal = goalCell;
+        keyModifier = 0;
+        rhs[goal] = 0;
+        openSet.push(goal, heuristic(start, goal), 0);
+        initialized = true;
+    }
+
+    /**
+     * Moves the start of the search to the unit's new cell. Must be called before applying
+     * occupancy changes observed at that position.
+     */
+    public void moveStart(int startCell) {
+        if (startCell == start) {
+            return;
+        }
+        start = startCell;
+        keyModifier += heuristic(lastStart, start);
+        lastStart = start;
+    }
+
+    /**
+     * Records that a cell became blocked or free, and updates the vertices whose one-step
+     * lookahead depends on it.
+     */
+    public void setBlocked(int cell, boolean value) {
+        if (blocked.isBlocked(cell) == value) {
+            return;
+        }
+        blocked.setBlocked(cell, value);
+
+        updateRhs(cell);
+        updateNeighbours(cell);
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked.isBlocked(cell);
+    }
+
+    /**
+     * Repairs the search tree and extracts the path from the current start.
+     *
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public int[] computePath() {
+        computeShortestPath();
+        if (g[start] >= INFINITY) {
+            return null;
+        }
+
+        int[] cells = new int[Math.max(1, g[start])];
+        int length = 0;
+        int current = bestSuccessor(start);
+        while (current != goal) {
+            if (current < 0 || length == g.length) {
+                return null;
+            }
+            if (length == cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            cells[length++] = current;
+            current = bestSuccessor(current);
+        }
+        return Arrays.copyOf(cells, length);
+    }
+
+    private void computeShortestPath() {
+        while (!openSet.isEmpty()
+                && (compareKeys(openSet.peekPrimary(), openSet.peekSecondary(), primaryKey(start), secondaryKey(start)) < 0
+                    || rhs[start] != g[start])) {
+            int u = openSet.peek();
+            int oldPrimary = openSet.peekPrimary();
+            int oldSecondary = openSet.peekSecondary();
+            int newPrimary = primaryKey(u);
+            int newSecondary = secondaryKey(u);
+
+            if (compareKeys(oldPrimary, oldSecondary, newPrimary, newSecondary) < 0) {
+                openSet.push(u, newPrimary, newSecondary);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                openSet.remove(u);
+                updateNeighbours(u);
+            } else {
+                g[u] = INFINITY;
+                updateRhs(u);
+                updateNeighbours(u);
+            }
+        }
+    }
+
+    private void updateNeighbours(int cell) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (nx >= 0 && ny >= 0 && nx < xExtent && ny < yExtent) {
+                updateRhs(ny * xExtent + nx);
+            }
+        }
+    }
+
+    /**
+     * Recomputes the one-step lookahead value of the cell from its neighbours and
+     * fixes its membership in the open set.
+     */
+    private void updateRhs(int cell) {
+        if (cell != goal) {
+            int best = INFINITY;
+            if (!blocked.isBlocked(cell)) {
+                int x = cell % xExtent;
+                int y = cell / xExtent;
+                for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                    int nx = x + NEIGHBOUR_X[i];
+                    int ny = y + NEIGHBOUR_Y[i];
+                    if (nx < 0 || ny < 0 || nx >= xExtent || ny >= yExtent) {
+                        continue;
+                    }
+                    int neighbour = ny * xExtent + nx;
+                    if (!blocked.isBlocked(neighbour) && g[neighbour] + 1 < best) {
+                        best = g[neighbour] + 1;
+                    }
+                }
+            }
+            rhs[cell] = best;
+        }
+
+        if (g[cell] != rhs[cell]) {
+            openSet.push(cell, primaryKey(cell), secondaryKey(cell));
+        } else {
+            openSet.remove(cell);
+        }
+    }
+
+    private int bestSuccessor(int cell) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        int best = -1;
+        int bestCost = INFINITY;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (nx < 0 || ny < 0 || nx >= xExtent || ny >= yExtent) {
+                continue;
+            }
+            int neighbour = ny * xExtent + nx;
+            if (!blocked.isBlocked(neighbour) && g[neighbour] < bestCost) {
+                best = neighbour;
+                bestCost = g[neighbour];
+            }
+        }
+        return best;
+    }
+
+    private int primaryKey(int cell) {
+        return Math.min(g[cell], rhs[cell]) + heuristic(start, cell) + keyModifier;
+    }
+
+    private int secondaryKey(int cell) {
+        return Math.min(g[cell], rhs[cell]);
+    }
+
+    private static int compareKeys(int primaryA, int secondaryA, int primaryB, int secondaryB) {
+        if (primaryA != primaryB) {
+            return Integer.compare(primaryA, primaryB);
+        }
+        return Integer.compare(secondaryA, secondaryB);
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.max(Math.abs(a % xExtent - b % xExtent), Math.abs(a / xExtent - b / xExtent));
+    }
+}
@@ -0,0 +1,142 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * A planned path stored as the direction of every step, 3 bits per step packed 21 to a long,
+ * with a cursor at the next step to take.
+ *
+ * Directions are numbered like the neighbour tables of the searches: code i moves by
+ * ({@link #DX}[i], {@link #DY}[i]). A step can also be {@link #HOLD}, staying on the cell for a
+ * turn; those are kept in a separate bitmap that is only allocated by paths that wait. The path
+ * remembers where it started and the cell the last step led to, so the cells it covers can be
+ * walked without storing them.
+ */
+public class DirectionPath {
+
+    public static final int[] DX = {0, -1, 0, 1, -1, -1, 1, 1};
+    public static final int[] DY = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    // code of a step that stays on the cell
+    public static final int HOLD = -1;
+
+    private static final int BITS = 3;
+    private static final int CODES_PER_WORD = 64 / BITS;
+    private static final long MASK = (1L << BITS) - 1;
+
+    // code of the step (dx, dy) at index (dy + 1) * 3 + dx + 1, -1 for standing still
+    private static final int[] CODE_OF_OFFSET = {4, 0, 7, 1, -1, 3, 5, 2, 6};
+
+    private final long[] words;
+    // one bit per step that holds, null if none does
+    private long[] holds;
+    private final int length;
+    private int cursor;
+    private int x, y;
+    private int lastCode = HOLD;
+
+    /**
+     * @param startX Column the path starts from
+     * @param startY Row the path starts from
+     * @param cells Cells to move through in order, excluding the start; each must be next to the one
+     *              before, or the same cell to hold for a turn
+     * @param xExtent Width of the map
+     */
+    public DirectionPath(int startX, int startY, int[] cells, int xExtent) {
+        this.x = startX;
+        this.y = startY;
+        this.length = cells.length;
+        this.words = new long[(length + CODES_PER_WORD - 1) / CODES_PER_WORD];
+
+        int px = startX, py = startY;
+        for (int i = 0; i < length; i++) {
+            int cx = cells[i] % xExtent;
+            int cy = cells[i] / xExtent;
+            int dx = cx - px, dy = cy - py;
+            if (dx == 0 && dy == 0) {
+                if (holds == null) {
+                    holds = new long[(length + 63) >>> 6];
+                }
+                holds[i >>> 6] |= 1L << i;
+                continue;
+            }
+            int code = Math.abs(dx) > 1 || Math.abs(dy) > 1 ? -1 : CODE_OF_OFFSET[(dy + 1) * 3 + dx + 1];
+            if (code < 0) {
+                throw new IllegalArgumentException("Step " + i + " from (" + px + ", " + py + ") to ("
+                        + cx + ", " + cy + ") is not a move to a neighbour");
+            }
+            words[i / CODES_PER_WORD] |= (long) code << (i % CODES_PER_WORD * BITS);
+            px = cx;
+            py = cy;
+        }
+    }
+
+    /**
+     * @return Number of steps left to take
+     */
+    public int size() {
+        return length - cursor;
+    }
+
+    public boolean isEmpty() {
+        return cursor == length;
+    }
+
+    /**
+     * @return Number of steps of the whole path, taken or not
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return Index of the next step to take
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return Direction code of the given step of the path, or HOLD
+     */
+    public int codeAt(int step) {
+        if (holds != null && (holds[step >>> 6] & (1L << step)) != 0) {
+            return HOLD;
+        }
+        return (int) (words[step / CODES_PER_WORD] >>> (step % CODES_PER_WORD * BITS) & MASK);
+    }
+
+    /**
+     * Takes the next step.
+     *
+     * @return Its direction code, or HOLD
+     */
+    public int next() {
+        int code = codeAt(cursor++);
+        if (code != HOLD) {
+            x += DX[code];
+            y += DY[code];
+        }
+        lastCode = code;
+        return code;
+    }
+
+    /**
+     * @return Direction code of the step taken last, or -1 (HOLD) if it held or no step was taken yet
+     */
+    public int getLastDirection() {
+        return lastCode;
+    }
+
+    /**
+     * @return Column the last step led to, or the start column if no step was taken yet
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return Row the last step led to, or the start row if no step was taken yet
+     */
+    public int getY() {
+        return y;
+    }
+}
@@ -0,0 +1,308 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Distance from every cell to the nearest free cell next to a fixed goal, computed once with a
+ * reverse breadth-first search. A unit reaches the goal by repeatedly stepping to the neighbour
+ * with the smallest distance, so no search is needed per query.
+ *
+ * When a cell changes occupancy only the region whose distances depended on it is recomputed:
+ * blocking a cell invalidates the cells whose every shortest route went through it and rebuilds
+ * just those from the surrounding valid distances, freeing a cell propagates the shorter
+ * distances outwards until they stop improving.
+ */
+public class DistanceField {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final ObstacleGrid blocked;
+    private final int xExtent, yExtent;
+    private final int[] distance;
+    private final boolean[] source;
+    private final OpenSet openSet;
+    private final int[] queue;
+    private final int[] queuedStamp;
+    private final int[] affectedStamp;
+    private int generation;
+
+    /**
+     * @param obstacles Static obstacles. The grid is copied, later changes are reported through setBlocked
+     */
+    public DistanceField(ObstacleGrid obstacles) {
+        this.blocked = new ObstacleGrid(obstacles);
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        int cellCount = xExtent * yExtent;
+        distance = new int[cellCount];
+        source = new boolean[cellCount];
+        openSet = new OpenSet(cellCount);
+        queue = new int[cellCount];
+        queuedStamp = new int[cellCount];
+        affectedStamp = new int[cellCount];
+    }
+
+    /**
+     * Computes the field for a goal that occupies its own cell, e.g. a townhall.
+     *
+     * @param goalCell Cell of the goal. It is treated as blocked, its free neighbours are at distance 0
+     */
+    public void build(int goalCell) {
+        blocked.setBlocked(goalCell, true);
+        Arrays.fill(source, false);
+        Arrays.fill(distance, UNREACHABLE);
+
+        int head = 0, tail = 0;
+        int gx = goalCell % xExtent;
+        int gy = goalCell / xExtent;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int x = gx + NEIGHBOUR_X[i];
+            int y = gy + NEIGHBOUR_Y[i];
+            if (!blocked.inBounds(x, y)) {
+                continue;
+            }
+            // neighbours blocked now still become sources if they are freed later
+            int cell = y * xExtent + x;
+            source[cell] = true;
+            if (!blocked.isBlocked(cell)) {
+                distance[cell] = 0;
+                queue[tail++] = cell;
+            }
+        }
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (blocked.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (distance[next] == UNREACHABLE) {
+                    distance[next] = distance[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of moves from the cell to a cell next to the goal, or UNREACHABLE
+     */
+    public int getDistance(int cell) {
+        return distance[cell];
+    }
+
+    /**
+     * @return The neighbour one step closer to the goal, or -1 if the cell cannot reach the goal
+     */
+    public int nextStep(int cell) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        int best = -1;
+        int bestDistance = distance[cell];
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (blocked.isBlocked(nx, ny)) {
+                continue;
+            }
+            int next = ny * xExtent + nx;
+            if (distance[next] < bestDistance) {
+                best = next;
+                bestDistance = distance[next];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Follows the gradient from the cell to the goal.
+     *
+     * @param startCell Cell of the unit
+     * @return Cells to move through in order, excluding the start and ending next to the goal,
+     *         or null if the goal cannot be reached
+     */
+    public int[] pathFrom(int startCell) {
+        if (distance[startCell] == UNREACHABLE) {
+            return null;
+        }
+
+        int[] cells = new int[distance[startCell]];
+        int cell = startCell;
+        for (int i = 0; i < cells.length; i++) {
+            cell = nextStep(cell);
+            cells[i] = cell;
+        }
+        return cells;
+    }
+
+    /**
+     * Records that a cell became blocked or free and repairs the affected part of the field.
+     */
+    public void setBlocked(int cell, boolean value) {
+        if (blocked.isBlocked(cell) == value) {
+            return;
+        }
+        blocked.setBlocked(cell, value);
+        if (value) {
+            if (distance[cell] != UNREACHABLE) {
+                raise(cell);
+            }
+        } else {
+            lower(cell);
+        }
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked.isBlocked(cell);
+    }
+
+    /**
+     * A cell on some shortest routes was blocked. Finds the cells that have no other neighbour
+     * one step closer to the goal, level by level, then rebuilds their distances with a
+     * Dijkstra search seeded from the valid cells around them.
+     */
+    private void raise(int blockedCell) {
+        generation++;
+        int head = 0, tail = 0;
+        queue[tail++] = blockedCell;
+        queuedStamp[blockedCell] = generation;
+        affectedStamp[blockedCell] = generation;
+
+        // the queue holds cells in order of their old distance, so every cell one level closer
+        // to the goal has been classified by the time a cell is checked for support
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell != blockedCell) {
+                if (isSupported(cell)) {
+                    continue;
+                }
+                affectedStamp[cell] = generation;
+            }
+
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (blocked.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (queuedStamp[next] != generation && distance[next] == distance[cell] + 1) {
+                    queuedStamp[next] = generation;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        distance[blockedCell] = UNREACHABLE;
+        int affectedCount = 0;
+        for (int i = 0; i < tail; i++) {
+            if (affectedStamp[queue[i]] == generation && queue[i] != blockedCell) {
+                distance[queue[i]] = UNREACHABLE;
+                queue[affectedCount++] = queue[i];
+            }
+        }
+
+        // seed the rebuild with the best valid neighbour of every invalidated cell
+        openSet.clear();
+        for (int i = 0; i < affectedCount; i++) {
+            int cell = queue[i];
+            int best = bestValidNeighbour(cell);
+            if (best != UNREACHABLE) {
+                distance[cell] = best + 1;
+                openSet.push(cell, distance[cell], 0);
+            }
+        }
+        propagate();
+    }
+
+    /**
+     * A cell was freed. Gives it a distance from its neighbours and spreads any improvement.
+     */
+    private void lower(int freedCell) {
+        // nothing is being rebuilt, a new generation clears the marks left by the last raise
+        generation++;
+        openSet.clear();
+        if (source[freedCell]) {
+            distance[freedCell] = 0;
+        } else {
+            int best = bestValidNeighbour(freedCell);
+            distance[freedCell] = best == UNREACHABLE ? UNREACHABLE : best + 1;
+        }
+        if (distance[freedCell] != UNREACHABLE) {
+            openSet.push(freedCell, distance[freedCell], 0);
+        }
+        propagate();
+    }
+
+    private void propagate() {
+        while (!openSet.isEmpty()) {
+            int cell = openSet.pop();
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            int nextDistance = distance[cell] + 1;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (blocked.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (nextDistance < distance[next]) {
+                    distance[next] = nextDistance;
+                    openSet.push(next, nextDistance, 0);
+                }
+            }
+        }
+    }
+
+    private boolean isSupported(int cell) {
+        if (source[cell]) {
+            return true;
+        }
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (blocked.isBlocked(nx, ny)) {
+                continue;
+            }
+            int next = ny * xExtent + nx;
+            if (distance[next] == distance[cell] - 1 && affectedStamp[next] != generation) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The smallest distance among the free neighbours that are not being rebuilt, or UNREACHABLE
+     */
+    private int bestValidNeighbour(int cell) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        int best = UNREACHABLE;
+        for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+            int nx = x + NEIGHBOUR_X[i];
+            int ny = y + NEIGHBOUR_Y[i];
+            if (blocked.isBlocked(nx, ny)) {
+                continue;
+            }
+            int next = ny * xExtent + nx;
+            if (affectedStamp[next] != generation && distance[next] < best) {
+                best = distance[next];
+            }
+        }
+        return best;
+    }
+}
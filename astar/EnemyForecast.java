@@ -0,0 +1,87 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Guesses where the enemy footman will be on the next turns from where it was on the last few.
+ *
+ * The enemy is assumed to keep its average velocity over the remembered turns, rounded to whole
+ * cells, until a tree or the edge of the map stops it. A forecast that ends before the horizon
+ * means the enemy is expected to stand still from its last cell on; one that reaches the horizon
+ * says nothing about the turns after it.
+ */
+public class EnemyForecast {
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent;
+    // last observed cells and their turns, oldest first once the ring has wrapped
+    private final int[] cells;
+    private final int[] turns;
+    private int count, next;
+
+    /**
+     * @param obstacles Static obstacles of the map
+     * @param window Number of turns to average the velocity over
+     */
+    public EnemyForecast(ObstacleGrid obstacles, int window) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.cells = new int[Math.max(2, window)];
+        this.turns = new int[cells.length];
+    }
+
+    /**
+     * Records where the enemy is on the given turn. A second observation of the same turn
+     * replaces the first.
+     */
+    public void observe(int turn, int cell) {
+        if (count > 0) {
+            int last = (next + cells.length - 1) % cells.length;
+            if (turns[last] == turn) {
+                cells[last] = cell;
+                return;
+            }
+        }
+        cells[next] = cell;
+        turns[next] = turn;
+        next = (next + 1) % cells.length;
+        count = Math.min(count + 1, cells.length);
+    }
+
+    /**
+     * @param horizon Number of turns to look ahead
+     * @return Predicted cell for the current turn and each following one, at most horizon + 1
+     *         cells, or an empty array if the enemy was never observed
+     */
+    public int[] predict(int horizon) {
+        if (count == 0) {
+            return new int[0];
+        }
+        int last = (next + cells.length - 1) % cells.length;
+        int oldest = (next + cells.length - count) % cells.length;
+        int lastX = cells[last] % xExtent, lastY = cells[last] / xExtent;
+        int elapsed = turns[last] - turns[oldest];
+        double vx = 0, vy = 0;
+        if (elapsed > 0) {
+            vx = (lastX - cells[oldest] % xExtent) / (double) elapsed;
+            vy = (lastY - cells[oldest] / xExtent) / (double) elapsed;
+        }
+
+        if (vx == 0 && vy == 0) {
+            return new int[] {cells[last]};
+        }
+        int[] trajectory = new int[horizon + 1];
+        trajectory[0] = cells[last];
+        for (int t = 1; t <= horizon; t++) {
+            // moving slower than a cell per turn, rounding holds it in place on some turns
+            int x = lastX + (int) Math.round(vx * t);
+            int y = lastY + (int) Math.round(vy * t);
+            if (obstacles.isBlocked(x, y)) {
+                // stopped by a tree or the edge of the map
+                return Arrays.copyOf(trajectory, t);
+            }
+            trajectory[t] = y * xExtent + x;
+        }
+        return trajectory;
+    }
+}
@@ -0,0 +1,157 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Plain A* on the 8-connected grid where every move costs 1, with the Chebyshev distance or a
+ * {@link LandmarkHeuristic} as heuristic. All per-search state lives in the {@link SearchArena} passed in, so threads can run
+ * searches at the same time as long as each uses its own arena.
+ */
+public final class GridAstar {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private GridAstar() {
+    }
+
+    /**
+     * Runs the search. The caller must have reset the arena and marked the cells blocked for this search.
+     *
+     * @param arena Arena of the calling thread
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach, e.g. the townhall
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public static int[] search(SearchArena arena, int startCell, int goalCell) {
+        return search(arena, startCell, goalCell, null);
+    }
+
+    /**
+     * Same as {@link #search(SearchArena, int, int)} with the landmark bound as heuristic.
+     *
+     * @param landmarks Tables computed for the arena's map, or null for the Chebyshev distance
+     */
+    public static int[] search(SearchArena arena, int startCell, int goalCell, LandmarkHeuristic landmarks) {
+        int xExtent = arena.getXExtent();
+        int yExtent = arena.getYExtent();
+        int goalX = goalCell % xExtent;
+        int goalY = goalCell / xExtent;
+
+        // frontier keyed by cell index, ordered by f-cost and then g-cost
+        OpenSet openSet = arena.getOpenSet();
+        arena.open(startCell, 0, -1, landmarks == null
+                ? distance(startCell % xExtent, startCell / xExtent, goalX, goalY) : landmarks.estimate(startCell, goalCell));
+
+        while (!openSet.isEmpty()) {
+            int currentCell = openSet.pop();
+            if (currentCell == goalCell) {
+                return buildPath(arena, startCell, goalCell);
+            }
+            arena.close(currentCell);
+
+            int col = currentCell % xExtent;
+            int row = currentCell / xExtent;
+            int nextG = arena.getGCost(currentCell) + 1;
+
+            // open all eight neighbours, every move costs 1
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int x = col + NEIGHBOUR_X[i];
+                int y = row + NEIGHBOUR_Y[i];
+                if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+                    continue;
+                }
+                int cell = y * xExtent + x;
+                if (arena.isBlocked(cell) || arena.getState(cell) == SearchArena.CLOSED || nextG >= arena.getGCost(cell)) {
+                    continue;
+                }
+                int h = landmarks == null ? distance(x, y, goalX, goalY) : landmarks.estimate(cell, goalCell);
+                arena.open(cell, nextG, currentCell, nextG + h);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches for the nearest free cell next to any of several structures, e.g. every enemy
+     * building, instead of towards one goal cell. The heuristic is the Chebyshev distance to the
+     * nearest structure less one, which stays consistent, so the first such cell expanded is the
+     * cheapest attack position among all of them.
+     *
+     * The caller must have reset the arena and marked the cells blocked for this search,
+     * including the cells of the structures themselves.
+     *
+     * @param arena Arena of the calling thread
+     * @param startCell Cell of the unit
+     * @param structureCells Cells of the structures
+     * @return Cells to move through in order, excluding the start and ending next to a structure,
+     *         empty if the start is next to one already, or null if none can be reached
+     */
+    public static int[] searchNearest(SearchArena arena, int startCell, int[] structureCells) {
+        if (structureCells.length == 0) {
+            return null;
+        }
+        int xExtent = arena.getXExtent();
+        int yExtent = arena.getYExtent();
+
+        OpenSet openSet = arena.getOpenSet();
+        arena.open(startCell, 0, -1, nearest(startCell, structureCells, xExtent));
+
+        while (!openSet.isEmpty()) {
+            int currentCell = openSet.pop();
+            if (nearest(currentCell, structureCells, xExtent) == 0) {
+                int[] cells = new int[arena.getGCost(currentCell)];
+                int index = cells.length;
+                for (int cell = currentCell; cell != startCell && cell != -1; cell = arena.getCameFrom(cell)) {
+                    cells[--index] = cell;
+                }
+                return cells;
+            }
+            arena.close(currentCell);
+
+            int col = currentCell % xExtent;
+            int row = currentCell / xExtent;
+            int nextG = arena.getGCost(currentCell) + 1;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int x = col + NEIGHBOUR_X[i];
+                int y = row + NEIGHBOUR_Y[i];
+                if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+                    continue;
+                }
+                int cell = y * xExtent + x;
+                if (arena.isBlocked(cell) || arena.getState(cell) == SearchArena.CLOSED || nextG >= arena.getGCost(cell)) {
+                    continue;
+                }
+                arena.open(cell, nextG, currentCell, nextG + nearest(cell, structureCells, xExtent));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walks back from the goal; the goal and the start position are not part of the path.
+     */
+    private static int[] buildPath(SearchArena arena, int startCell, int goalCell) {
+        int[] cells = new int[Math.max(0, arena.getGCost(goalCell) - 1)];
+        int index = cells.length;
+        for (int cell = arena.getCameFrom(goalCell); cell != startCell && cell != -1; cell = arena.getCameFrom(cell)) {
+            cells[--index] = cell;
+        }
+        return cells;
+    }
+
+    /**
+     * @return Moves from the cell to the closest cell next to one of the structures, ignoring obstacles
+     */
+    private static int nearest(int cell, int[] structureCells, int xExtent) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        int best = Integer.MAX_VALUE;
+        for (int structure : structureCells) {
+            best = Math.min(best, distance(x, y, structure % xExtent, structure / xExtent) - 1);
+        }
+        return best;
+    }
+
+    private static int distance(int x1, int y1, int x2, int y2) {
+        return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
+    }
+}
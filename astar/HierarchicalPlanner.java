@@ -0,0 +1,488 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical path planner (HPA*, Botea, Mueller and Schaeffer 2004).
+ *
+ * The map is cut into square clusters. Wherever two neighbouring clusters share a run of free
+ * border cells an entrance is placed, as well as where a unit can only cross a border or a cluster
+ * corner diagonally, and the costs between all entrances of a cluster are
+ * computed once in {@link #build()}. A query only searches this small abstract graph, then refines
+ * one abstract edge at a time into grid cells, so the cost of a query barely depends on the map size.
+ *
+ * Paths are near-optimal rather than optimal, since they must pass through entrance cells.
+ *
+ * When cells change occupancy, {@link #update(int[])} only searches the clusters containing them
+ * again, unless a change on a cluster border may have moved the entrances.
+ */
+public class HierarchicalPlanner {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    // runs of free border cells at least this long get an entrance at each end instead of one in the middle
+    private static final int LONG_ENTRANCE = 6;
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private final int clusterSize;
+    private final int clustersX, clustersY;
+
+    // abstract graph
+    private int nodeCount;
+    private int[] nodeCell = new int[64];
+    private final int[] nodeOfCell;
+    private int[][] edges = new int[64][];  // per node: to, cost, to, cost, ...
+    private int[] degree = new int[64];
+    private int[][] clusterNodes;
+
+    // breadth-first search restricted to one cluster
+    private final int[] distance;
+    private final int[] parent;
+    private final int[] stamp;
+    private final int[] queue;
+    private int generation;
+
+    // abstract search, sized once the graph is built
+    private OpenSet abstractOpen;
+    private int[] abstractG;
+    private int[] abstractParent;
+    private int[] startLinks;
+    private int[] goalLinks;
+
+    // the current abstract path and how much of it has been handed out
+    private int[] route;
+    private int routeIndex;
+    private int goalCell;
+
+    private long buildTime; // nsecs
+
+    /**
+     * @param obstacles Obstacles of the map, read as they are; report changes through update
+     * @param clusterSize Width and height of a cluster in cells
+     */
+    public HierarchicalPlanner(ObstacleGrid obstacles, int clusterSize) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        this.clusterSize = clusterSize;
+        this.clustersX = (xExtent + clusterSize - 1) / clusterSize;
+        this.clustersY = (yExtent + clusterSize - 1) / clusterSize;
+
+        int cellCount = xExtent * yExtent;
+        nodeOfCell = new int[cellCount];
+        distance = new int[cellCount];
+        parent = new int[cellCount];
+        stamp = new int[cellCount];
+        queue = new int[cellCount];
+    }
+
+    /**
+     * Places the entrances and computes the entrance-to-entrance costs inside every cluster.
+     */
+    public void build() {
+        long startTime = System.nanoTime();
+
+        nodeCount = 0;
+        Arrays.fill(nodeOfCell, -1);
+        Arrays.fill(degree, 0);
+
+        // vertical borders between horizontally neighbouring clusters
+        for (int cx = 1; cx < clustersX; cx++) {
+            int x = cx * clusterSize;
+            for (int cy = 0; cy < clustersY; cy++) {
+                addEntrances(x - 1, cy * clusterSize, x, cy * clusterSize, 0, 1,
+                        Math.min(clusterSize, yExtent - cy * clusterSize), true);
+            }
+        }
+        // horizontal borders between vertically neighbouring clusters
+        for (int cy = 1; cy < clustersY; cy++) {
+            int y = cy * clusterSize;
+            for (int cx = 0; cx < clustersX; cx++) {
+                addEntrances(cx * clusterSize, y - 1, cx * clusterSize, y, 1, 0,
+                        Math.min(clusterSize, xExtent - cx * clusterSize), false);
+            }
+        }
+
+        // group the entrances by cluster
+        int[] clusterCount = new int[clustersX * clustersY];
+        for (int node = 0; node < nodeCount; node++) {
+            clusterCount[clusterOf(nodeCell[node])]++;
+        }
+        clusterNodes = new int[clusterCount.length][];
+        for (int cluster = 0; cluster < clusterCount.length; cluster++) {
+            clusterNodes[cluster] = new int[clusterCount[cluster]];
+            clusterCount[cluster] = 0;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            int cluster = clusterOf(nodeCell[node]);
+            clusterNodes[cluster][clusterCount[cluster]++] = node;
+        }
+
+        for (int cluster = 0; cluster < clusterNodes.length; cluster++) {
+            linkCluster(cluster);
+        }
+
+        abstractOpen = new OpenSet(nodeCount + 2);
+        abstractG = new int[nodeCount + 2];
+        abstractParent = new int[nodeCount + 2];
+        startLinks = new int[nodeCount];
+        goalLinks = new int[nodeCount];
+
+        buildTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Repairs the graph after cells changed occupancy. A change inside a cluster only alters the
+     * costs between that cluster's entrances; a change next to a cluster border may add or remove
+     * entrances, so it rebuilds the whole graph.
+     *
+     * @param cells Cells that became blocked or free since the graph was built or last updated
+     * @return true if the legs still to be handed out may have changed, so the route should be planned again
+     */
+    public boolean update(int[] cells) {
+        boolean[] dirty = new boolean[clustersX * clustersY];
+        for (int cell : cells) {
+            if (onBorder(cell)) {
+                build();
+                return route != null;
+            }
+            dirty[clusterOf(cell)] = true;
+        }
+        for (int cluster = 0; cluster < dirty.length; cluster++) {
+            if (dirty[cluster]) {
+                linkCluster(cluster);
+            }
+        }
+        for (int i = routeIndex; route != null && i < route.length; i++) {
+            if (dirty[clusterOf(route[i])]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return Time spent in {@link #build()} in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Searches the abstract graph from the start to the goal and refines its first edge.
+     *
+     * @param startCell Cell of the unit
+     * @param goal Cell to reach
+     * @param enemyCell Cell that is temporarily blocked, or -1
+     * @return Cells of the first leg, excluding the start, or null if no abstract path was found
+     */
+    public int[] findFirstLeg(int startCell, int goal, int enemyCell) {
+        route = null;
+        goalCell = goal;
+
+        int startNode = nodeCount;
+        int goalNode = nodeCount + 1;
+        int startCluster = clusterOf(startCell);
+        int goalCluster = clusterOf(goal);
+
+        // connect the start and the goal to the entrances of their clusters
+        Arrays.fill(startLinks, -1);
+        Arrays.fill(goalLinks, -1);
+        clusterSearch(startCell, -1, enemyCell);
+        for (int node : clusterNodes[startCluster]) {
+            startLinks[node] = reachedCost(nodeCell[node]);
+        }
+        int directCost = startCluster == goalCluster ? reachedCost(goal) : -1;
+        clusterSearch(goal, -1, enemyCell);
+        for (int node : clusterNodes[goalCluster]) {
+            goalLinks[node] = reachedCost(nodeCell[node]);
+        }
+
+        Arrays.fill(abstractG, Integer.MAX_VALUE);
+        abstractOpen.clear();
+        abstractG[startNode] = 0;
+        abstractParent[startNode] = -1;
+        abstractOpen.push(startNode, heuristic(startCell, goal), 0);
+
+        while (!abstractOpen.isEmpty()) {
+            int current = abstractOpen.pop();
+            if (current == goalNode) {
+                route = buildRoute(startCell, goalNode);
+                routeIndex = 0;
+                return nextLeg(enemyCell);
+            }
+
+            int g = abstractG[current];
+            if (current == startNode) {
+                for (int node : clusterNodes[startCluster]) {
+                    relax(current, node, g + startLinks[node], startLinks[node] >= 0);
+                }
+                relax(current, goalNode, g + directCost, directCost >= 0);
+                continue;
+            }
+
+            // precomputed edges ignore the enemy, so its entrance is left out here
+            int[] nodeEdges = edges[current];
+            for (int i = 0; i < degree[current]; i += 2) {
+                relax(current, nodeEdges[i], g + nodeEdges[i + 1], nodeCell[nodeEdges[i]] != enemyCell);
+            }
+            relax(current, goalNode, g + goalLinks[current], goalLinks[current] >= 0);
+        }
+        return null;
+    }
+
+    public boolean hasNextLeg() {
+        return route != null && routeIndex < route.length - 1;
+    }
+
+    /**
+     * Refines the next edge of the abstract path into grid cells.
+     *
+     * @param enemyCell Cell that is temporarily blocked, or -1
+     * @return Cells of the leg excluding where it starts and excluding the goal itself,
+     *         an empty array if there is nothing left, or null if the leg is blocked
+     */
+    public int[] nextLeg(int enemyCell) {
+        // skip zero length legs, e.g. when the start is itself an entrance
+        while (hasNextLeg() && route[routeIndex] == route[routeIndex + 1]) {
+            routeIndex++;
+        }
+        if (!hasNextLeg()) {
+            return new int[0];
+        }
+
+        int from = route[routeIndex];
+        int to = route[++routeIndex];
+        int[] cells;
+        if (clusterOf(from) != clusterOf(to)) {
+            // edges between clusters join two neighbouring cells
+            if (to == enemyCell) {
+                route = null;
+                return null;
+            }
+            cells = new int[] {to};
+        } else {
+            clusterSearch(from, to, enemyCell);
+            int cost = reachedCost(to);
+            if (cost < 0) {
+                route = null;
+                return null;
+            }
+            cells = new int[cost];
+            for (int cell = to, i = cost - 1; i >= 0; cell = parent[cell], i--) {
+                cells[i] = cell;
+            }
+        }
+        if (to == goalCell) {
+            cells = Arrays.copyOf(cells, cells.length - 1);
+        }
+        return cells;
+    }
+
+    private void relax(int from, int to, int g, boolean connected) {
+        if (connected && g < abstractG[to]) {
+            abstractG[to] = g;
+            abstractParent[to] = from;
+            int cell = to == nodeCount + 1 ? goalCell : nodeCell[to];
+            abstractOpen.push(to, g + heuristic(cell, goalCell), g);
+        }
+    }
+
+    private int[] buildRoute(int startCell, int goalNode) {
+        int length = 0;
+        for (int node = goalNode; node != -1; node = abstractParent[node]) {
+            length++;
+        }
+        int[] cells = new int[length];
+        for (int node = goalNode; node != -1; node = abstractParent[node]) {
+            cells[--length] = node == goalNode ? goalCell : node == nodeCount ? startCell : nodeCell[node];
+        }
+        return cells;
+    }
+
+    /**
+     * Replaces the edges between the entrances of one cluster, keeping the transitions to the
+     * neighbouring clusters.
+     */
+    private void linkCluster(int cluster) {
+        int[] members = clusterNodes[cluster];
+        for (int node : members) {
+            int[] nodeEdges = edges[node];
+            int kept = 0;
+            for (int i = 0; i < degree[node]; i += 2) {
+                if (clusterOf(nodeCell[nodeEdges[i]]) != cluster) {
+                    nodeEdges[kept++] = nodeEdges[i];
+                    nodeEdges[kept++] = nodeEdges[i + 1];
+                }
+            }
+            degree[node] = kept;
+        }
+        for (int i = 0; i < members.length; i++) {
+            clusterSearch(nodeCell[members[i]], -1, -1);
+            for (int j = i + 1; j < members.length; j++) {
+                int cost = reachedCost(nodeCell[members[j]]);
+                if (cost >= 0) {
+                    addEdge(members[i], members[j], cost);
+                    addEdge(members[j], members[i], cost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans one border between two clusters and adds entrances for every run of cell pairs that
+     * are free on both sides, then for every diagonal step across the border that no such pair
+     * next to it allows instead.
+     *
+     * @param corners true to also add the diagonal steps past either end of the border, i.e.
+     *                across the cluster corners; only one of the two borders at a corner does
+     */
+    private void addEntrances(int ax, int ay, int bx, int by, int stepX, int stepY, int length, boolean corners) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length
+                    && !obstacles.isBlocked(ax + i * stepX, ay + i * stepY)
+                    && !obstacles.isBlocked(bx + i * stepX, by + i * stepY);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+                    addTransition(ax, ay, bx, by, stepX, stepY, runStart);
+                    addTransition(ax, ay, bx, by, stepX, stepY, runEnd);
+                } else {
+                    addTransition(ax, ay, bx, by, stepX, stepY, (runStart + runEnd) / 2);
+                }
+                runStart = -1;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (obstacles.isBlocked(ax + i * stepX, ay + i * stepY)) {
+                continue;
+            }
+            for (int j = i - 1; j <= i + 1; j += 2) {
+                if ((j < 0 || j >= length) && !corners) {
+                    continue;
+                }
+                // the straight pairs at i and j both closed means only the diagonal leads across here
+                if (!obstacles.isBlocked(bx + j * stepX, by + j * stepY)
+                        && obstacles.isBlocked(bx + i * stepX, by + i * stepY)
+                        && obstacles.isBlocked(ax + j * stepX, ay + j * stepY)) {
+                    int a = nodeFor(obstacles.cell(ax + i * stepX, ay + i * stepY));
+                    int b = nodeFor(obstacles.cell(bx + j * stepX, by + j * stepY));
+                    addEdge(a, b, 1);
+                    addEdge(b, a, 1);
+                }
+            }
+        }
+    }
+
+    private void addTransition(int ax, int ay, int bx, int by, int stepX, int stepY, int offset) {
+        int a = nodeFor(obstacles.cell(ax + offset * stepX, ay + offset * stepY));
+        int b = nodeFor(obstacles.cell(bx + offset * stepX, by + offset * stepY));
+        addEdge(a, b, 1);
+        addEdge(b, a, 1);
+    }
+
+    private int nodeFor(int cell) {
+        if (nodeOfCell[cell] >= 0) {
+            return nodeOfCell[cell];
+        }
+        if (nodeCount == nodeCell.length) {
+            nodeCell = Arrays.copyOf(nodeCell, nodeCount * 2);
+            edges = Arrays.copyOf(edges, nodeCount * 2);
+            degree = Arrays.copyOf(degree, nodeCount * 2);
+        }
+        nodeCell[nodeCount] = cell;
+        edges[nodeCount] = new int[8];
+        nodeOfCell[cell] = nodeCount;
+        return nodeCount++;
+    }
+
+    private void addEdge(int from, int to, int cost) {
+        int[] nodeEdges = edges[from];
+        if (degree[from] + 2 > nodeEdges.length) {
+            nodeEdges = edges[from] = Arrays.copyOf(nodeEdges, nodeEdges.length * 2);
+        }
+        nodeEdges[degree[from]++] = to;
+        nodeEdges[degree[from]++] = cost;
+    }
+
+    /**
+     * Breadth-first search from the source that never leaves the source's cluster. Every move
+     * costs 1, so the distances found are exact within the cluster.
+     *
+     * @param source Cell to start from
+     * @param target Cell at which the search may stop early, or -1 to reach the whole cluster
+     * @param enemyCell Cell that is temporarily blocked, or -1
+     */
+    private void clusterSearch(int source, int target, int enemyCell) {
+        generation++;
+        int cluster = clusterOf(source);
+        int minX = (cluster % clustersX) * clusterSize;
+        int minY = (cluster / clustersX) * clusterSize;
+        int maxX = Math.min(xExtent, minX + clusterSize) - 1;
+        int maxY = Math.min(yExtent, minY + clusterSize) - 1;
+
+        int head = 0, tail = 0;
+        stamp[source] = generation;
+        distance[source] = 0;
+        parent[source] = -1;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == target) {
+                return;
+            }
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (nx < minX || ny < minY || nx > maxX || ny > maxY) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (stamp[next] == generation || next == enemyCell || obstacles.isBlocked(next)) {
+                    continue;
+                }
+                stamp[next] = generation;
+                distance[next] = distance[cell] + 1;
+                parent[next] = cell;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    /**
+     * @return Distance found by the last cluster search, or -1 if the cell was not reached
+     */
+    private int reachedCost(int cell) {
+        return stamp[cell] == generation ? distance[cell] : -1;
+    }
+
+    /**
+     * @return true if the cell lies in the first or last row or column of its cluster next to another cluster
+     */
+    private boolean onBorder(int cell) {
+        int x = cell % xExtent;
+        int y = cell / xExtent;
+        return (x % clusterSize == 0 && x > 0) || (x % clusterSize == clusterSize - 1 && x < xExtent - 1)
+                || (y % clusterSize == 0 && y > 0) || (y % clusterSize == clusterSize - 1 && y < yExtent - 1);
+    }
+
+    private int clusterOf(int cell) {
+        return (cell / xExtent / clusterSize) * clustersX + (cell % xExtent) / clusterSize;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.max(Math.abs(a % xExtent - b % xExtent), Math.abs(a / xExtent - b / xExtent));
+    }
+}
@@ -0,0 +1,194 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Jump Point Search (Harabor and Grastien 2011) for the 8-connected grid where every move,
+ * diagonal or straight, costs 1 and diagonal moves may pass between two blocked cells.
+ *
+ * Instead of adding all eight neighbours of a cell to the open set the search jumps along straight
+ * and diagonal lines until it hits a cell with a forced neighbour, so only the turning points of
+ * the path are expanded. The returned path has the cells between the jump points filled back in.
+ */
+public class JumpPointSearch {
+
+    private static final int[] DIRECTION_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final SearchArena arena;
+    private final int xExtent, yExtent;
+    private int goalX, goalY;
+
+    /**
+     * @param arena Arena the search runs in. Blocked cells are read from it and its obstacle grid
+     */
+    public JumpPointSearch(SearchArena arena) {
+        this.arena = arena;
+        this.xExtent = arena.getXExtent();
+        this.yExtent = arena.getYExtent();
+    }
+
+    /**
+     * Runs the search. The caller must have reset the arena and marked the blocked cells.
+     *
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell) {
+        goalX = goalCell % xExtent;
+        goalY = goalCell / xExtent;
+        OpenSet openSet = arena.getOpenSet();
+
+        arena.open(startCell, 0, -1, distance(startCell % xExtent, startCell / xExtent, goalX, goalY));
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            if (current == goalCell) {
+                return buildPath(startCell, goalCell);
+            }
+            arena.close(current);
+
+            int x = current % xExtent;
+            int y = current / xExtent;
+            int parent = arena.getCameFrom(current);
+            if (parent < 0) {
+                for (int i = 0; i < DIRECTION_X.length; i++) {
+                    openJumpPoint(current, x, y, DIRECTION_X[i], DIRECTION_Y[i]);
+                }
+            } else {
+                expandPruned(current, x, y,
+                        Integer.signum(x - parent % xExtent), Integer.signum(y - parent / xExtent));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Follows only the natural and forced neighbours of a cell reached while travelling in direction (dx, dy).
+     */
+    private void expandPruned(int cell, int x, int y, int dx, int dy) {
+        if (dx != 0 && dy != 0) {
+            openJumpPoint(cell, x, y, 0, dy);
+            openJumpPoint(cell, x, y, dx, 0);
+            openJumpPoint(cell, x, y, dx, dy);
+            if (!isFree(x - dx, y)) {
+                openJumpPoint(cell, x, y, -dx, dy);
+            }
+            if (!isFree(x, y - dy)) {
+                openJumpPoint(cell, x, y, dx, -dy);
+            }
+        } else if (dx != 0) {
+            openJumpPoint(cell, x, y, dx, 0);
+            if (!isFree(x, y + 1)) {
+                openJumpPoint(cell, x, y, dx, 1);
+            }
+            if (!isFree(x, y - 1)) {
+                openJumpPoint(cell, x, y, dx, -1);
+            }
+        } else {
+            openJumpPoint(cell, x, y, 0, dy);
+            if (!isFree(x + 1, y)) {
+                openJumpPoint(cell, x, y, 1, dy);
+            }
+            if (!isFree(x - 1, y)) {
+                openJumpPoint(cell, x, y, -1, dy);
+            }
+        }
+    }
+
+    private void openJumpPoint(int from, int x, int y, int dx, int dy) {
+        int jumpPoint = jump(x, y, dx, dy);
+        if (jumpPoint < 0 || arena.getState(jumpPoint) == SearchArena.CLOSED) {
+            return;
+        }
+        int jx = jumpPoint % xExtent;
+        int jy = jumpPoint / xExtent;
+        int g = arena.getGCost(from) + distance(x, y, jx, jy);
+        if (g < arena.getGCost(jumpPoint)) {
+            arena.open(jumpPoint, g, from, g + distance(jx, jy, goalX, goalY));
+        }
+    }
+
+    /**
+     * Walks from (x, y) in direction (dx, dy) until reaching the goal, a cell with a forced
+     * neighbour or an obstacle.
+     *
+     * @return The jump point's cell, or -1 if the walk ran into an obstacle or the map edge
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        if (dx != 0 && dy != 0) {
+            while (true) {
+                x += dx;
+                y += dy;
+                if (!isFree(x, y)) {
+                    return -1;
+                }
+                if ((x == goalX && y == goalY)
+                        || (!isFree(x - dx, y) && isFree(x - dx, y + dy))
+                        || (!isFree(x, y - dy) && isFree(x + dx, y - dy))
+                        || jumpStraight(x, y, dx, 0) >= 0
+                        || jumpStraight(x, y, 0, dy) >= 0) {
+                    return y * xExtent + x;
+                }
+            }
+        }
+        return jumpStraight(x, y, dx, dy);
+    }
+
+    private int jumpStraight(int x, int y, int dx, int dy) {
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!isFree(x, y)) {
+                return -1;
+            }
+            if (x == goalX && y == goalY) {
+                return y * xExtent + x;
+            }
+            if (dx != 0) {
+                if ((!isFree(x, y + 1) && isFree(x + dx, y + 1))
+                        || (!isFree(x, y - 1) && isFree(x + dx, y - 1))) {
+                    return y * xExtent + x;
+                }
+            } else {
+                if ((!isFree(x + 1, y) && isFree(x + 1, y + dy))
+                        || (!isFree(x - 1, y) && isFree(x - 1, y + dy))) {
+                    return y * xExtent + x;
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands the chain of jump points into single steps. Consecutive jump points always lie on
+     * a straight or diagonal line, so the gaps are filled by stepping in that direction.
+     */
+    private int[] buildPath(int startCell, int goalCell) {
+        int[] cells = new int[Math.max(0, arena.getGCost(goalCell) - 1)];
+        int index = cells.length;
+        int cell = goalCell;
+        while (cell != startCell) {
+            int parent = arena.getCameFrom(cell);
+            int dx = Integer.signum(parent % xExtent - cell % xExtent);
+            int dy = Integer.signum(parent / xExtent - cell / xExtent);
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            // step from this jump point back towards its parent, recording every cell except the start
+            do {
+                if (cell != goalCell) {
+                    cells[--index] = cell;
+                }
+                x += dx;
+                y += dy;
+                cell = y * xExtent + x;
+            } while (cell != parent);
+        }
+        return cells;
+    }
+
+    private boolean isFree(int x, int y) {
+        return x >= 0 && y >= 0 && x < xExtent && y < yExtent && !arena.isBlocked(y * xExtent + x);
+    }
+
+    private static int distance(int x1, int y1, int x2, int y2) {
+        return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
+    }
+}
@@ -0,0 +1,215 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * ALT heuristic (Goldberg and Harrelson 2005): exact distances from a few landmark cells to every
+ * cell, and the triangle inequality to bound the distance between any two cells from below.
+ *
+ * For a landmark L, |d(L, n) - d(L, goal)| never exceeds the true distance from n to the goal,
+ * so the largest such difference over all landmarks, or the Chebyshev distance if that is
+ * larger, is admissible and consistent. Blocking more cells, such as the enemy footman's, only
+ * makes true distances longer and keeps it so. Behind a wall of trees the bound is far tighter
+ * than the Chebyshev distance alone.
+ *
+ * The tables only depend on the trees, so they are computed once per map and written to a file
+ * that later episodes memory-map instead of recomputing them. Distances are read straight from
+ * the mapping, which is safe for concurrent searches.
+ */
+public class LandmarkHeuristic {
+
+    public static final int UNREACHABLE = -1;
+
+    private static final int MAGIC = 0x414c5431; // "ALT1"
+    private static final int HEADER_INTS = 6;
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final int xExtent, yExtent, cellCount;
+    private final long fingerprint;
+    private final int[] landmarks;
+    // landmark i's distance to cell c is at i * cellCount + c, after the header and landmark cells
+    private final IntBuffer table;
+    private final int tableOffset;
+
+    private LandmarkHeuristic(int xExtent, int yExtent, long fingerprint, int[] landmarks, IntBuffer table) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        this.cellCount = xExtent * yExtent;
+        this.fingerprint = fingerprint;
+        this.landmarks = landmarks;
+        this.table = table;
+        this.tableOffset = HEADER_INTS + landmarks.length;
+    }
+
+    /**
+     * Chooses landmarks far apart from each other and computes their distance tables. Each new
+     * landmark is the free cell farthest from the ones chosen so far, which spreads them along
+     * the edges of the map where they give the tightest bounds.
+     *
+     * @param obstacles Static obstacles of the map
+     * @param count Number of landmarks
+     */
+    public static LandmarkHeuristic build(ObstacleGrid obstacles, int count) {
+        int cellCount = obstacles.cellCount();
+        int first = 0;
+        while (first < cellCount && obstacles.isBlocked(first)) {
+            first++;
+        }
+        if (first == cellCount) {
+            count = 0;
+        }
+
+        IntBuffer buffer = IntBuffer.allocate(HEADER_INTS + count + count * cellCount);
+        int[] distance = new int[cellCount];
+        int[] nearest = new int[cellCount];
+        int[] queue = new int[cellCount];
+        int[] chosen = new int[count];
+
+        if (count > 0) {
+            // start from the cell farthest from an arbitrary free cell
+            breadthFirst(obstacles, first, distance, queue);
+            int candidate = farthest(distance);
+            for (int i = 0; i < count; i++) {
+                chosen[i] = candidate;
+                breadthFirst(obstacles, candidate, distance, queue);
+                buffer.position(HEADER_INTS + count + i * cellCount);
+                buffer.put(distance);
+                for (int cell = 0; cell < cellCount; cell++) {
+                    nearest[cell] = i == 0 ? distance[cell] : Math.min(nearest[cell], distance[cell]);
+                }
+                candidate = farthest(nearest);
+            }
+        }
+
+        buffer.position(0);
+        buffer.put(MAGIC).put(obstacles.getXExtent()).put(obstacles.getYExtent()).put(count);
+        long fingerprint = obstacles.fingerprint();
+        buffer.put((int) (fingerprint >>> 32)).put((int) fingerprint).put(chosen);
+        buffer.clear();
+        return new LandmarkHeuristic(obstacles.getXExtent(), obstacles.getYExtent(), fingerprint, chosen, buffer);
+    }
+
+    /**
+     * Maps a file written by {@link #write(File)}.
+     *
+     * @throws IOException if the file cannot be read or was not written by this class
+     */
+    public static LandmarkHeuristic map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            IntBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+            if (buffer.limit() < HEADER_INTS || buffer.get(0) != MAGIC) {
+                throw new IOException(file + " is not a landmark table");
+            }
+            int xExtent = buffer.get(1);
+            int yExtent = buffer.get(2);
+            int count = buffer.get(3);
+            long fingerprint = ((long) buffer.get(4) << 32) | (buffer.get(5) & 0xffffffffL);
+            if (buffer.limit() != HEADER_INTS + count + (long) count * xExtent * yExtent) {
+                throw new IOException(file + " is truncated");
+            }
+            int[] landmarks = new int[count];
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = buffer.get(HEADER_INTS + i);
+            }
+            return new LandmarkHeuristic(xExtent, yExtent, fingerprint, landmarks, buffer);
+        }
+    }
+
+    /**
+     * Writes the header and tables in the format {@link #map(File)} reads.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        int ints = tableOffset + landmarks.length * cellCount;
+        ByteBuffer bytes = ByteBuffer.allocate(ints * 4);
+        IntBuffer source = table.duplicate();
+        source.clear().limit(ints);
+        bytes.asIntBuffer().put(source);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return true if the tables were computed for this map
+     */
+    public boolean matches(ObstacleGrid obstacles) {
+        return obstacles.getXExtent() == xExtent && obstacles.getYExtent() == yExtent
+                && obstacles.fingerprint() == fingerprint;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    /**
+     * @return Lower bound on the number of moves from the cell to the goal
+     */
+    public int estimate(int cell, int goalCell) {
+        int best = Math.max(Math.abs(cell % xExtent - goalCell % xExtent), Math.abs(cell / xExtent - goalCell / xExtent));
+        int offset = tableOffset;
+        for (int i = 0; i < landmarks.length; i++, offset += cellCount) {
+            int toCell = table.get(offset + cell);
+            int toGoal = table.get(offset + goalCell);
+            // a landmark in another component says nothing about this pair
+            if (toCell != UNREACHABLE && toGoal != UNREACHABLE) {
+                best = Math.max(best, Math.abs(toCell - toGoal));
+            }
+        }
+        return best;
+    }
+
+    private static void breadthFirst(ObstacleGrid obstacles, int source, int[] distance, int[] queue) {
+        Arrays.fill(distance, UNREACHABLE);
+        int xExtent = obstacles.getXExtent();
+        int head = 0, tail = 0;
+        distance[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (distance[next] == UNREACHABLE) {
+                    distance[next] = distance[cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private static int farthest(int[] distance) {
+        int best = 0;
+        for (int cell = 1; cell < distance.length; cell++) {
+            if (distance[cell] > distance[best]) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,86 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Appends one CSV row per path search so planning runs can be compared offline. The header is
+ * written only when the file is new, so several runs can share one file.
+ *
+ * Rows may come from the planner threads as well as the SEPIA thread, so every method locks the sink.
+ */
+public class MetricsCsvSink {
+
+    public static final String HEADER = "turn,mode,trigger,latency_us,expanded,generated,peak_open,path_length";
+
+    private final File file;
+    private PrintWriter writer;
+
+    public MetricsCsvSink(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file for appending. On failure an error is printed and the sink stays closed,
+     * so later writes are ignored.
+     */
+    public synchronized void open() {
+        if (writer != null) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        boolean newFile = !file.exists() || file.length() == 0;
+        try {
+            writer = new PrintWriter(new FileWriter(file, true));
+            if (newFile) {
+                writer.println(HEADER);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to open metrics file " + file + ": " + e.getMessage());
+            writer = null;
+        }
+    }
+
+    /**
+     * @param turn SEPIA turn number the search ran in
+     * @param mode Planner that ran the search
+     * @param trigger Why the search ran, e.g. "initial" or "replan"
+     * @param latencyNanos Wall-clock time of the search
+     * @param stats Node counters, or null if the planner does not count nodes
+     * @param pathLength Number of moves in the returned path, or -1 if no path was found
+     */
+    public synchronized void write(int turn, String mode, String trigger, long latencyNanos, SearchStats stats, int pathLength) {
+        if (writer == null) {
+            return;
+        }
+        StringBuilder row = new StringBuilder();
+        row.append(turn).append(',').append(mode).append(',').append(trigger).append(',')
+                .append(latencyNanos / 1000).append(',');
+        if (stats != null) {
+            row.append(stats.getExpanded()).append(',').append(stats.getGenerated()).append(',')
+                    .append(stats.getPeakOpenSetSize());
+        } else {
+            row.append(",,");
+        }
+        row.append(',').append(pathLength);
+        writer.println(row);
+    }
+
+    public synchronized void flush() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Bitmap of the impassable cells of a map, one bit per cell packed into a long[].
+ *
+ * Built from the resource nodes at the start of an episode so the search loops can test a cell
+ * with a shift and a mask instead of scanning the tree locations. Resources that vanish or appear
+ * later are applied with setBlocked; the version counts those changes so a structure derived
+ * from the grid can tell whether it is still current.
+ */
+public class ObstacleGrid {
+
+    private final int xExtent, yExtent;
+    private final long[] words;
+    private int version;
+
+    public ObstacleGrid(int xExtent, int yExtent) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        this.words = new long[(xExtent * yExtent + 63) >>> 6];
+    }
+
+    /**
+     * Copy constructor for planners that track their own view of the map.
+     *
+     * @param other Grid to copy
+     */
+    public ObstacleGrid(ObstacleGrid other) {
+        this.xExtent = other.xExtent;
+        this.yExtent = other.yExtent;
+        this.words = other.words.clone();
+    }
+
+    public int getXExtent() {
+        return xExtent;
+    }
+
+    public int getYExtent() {
+        return yExtent;
+    }
+
+    /**
+     * @return Number of occupancy changes made with setBlocked so far, including the ones that filled the grid
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public int cellCount() {
+        return xExtent * yExtent;
+    }
+
+    public int cell(int x, int y) {
+        return y * xExtent + x;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < xExtent && y < yExtent;
+    }
+
+    public boolean isBlocked(int cell) {
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return true if the position is off the map or blocked
+     */
+    public boolean isBlocked(int x, int y) {
+        return !inBounds(x, y) || isBlocked(y * xExtent + x);
+    }
+
+    /**
+     * @return Hash of the extents and the blocked cells, used to recognise a map across episodes
+     */
+    public long fingerprint() {
+        // FNV-1a style mix of the extents and the bitmap words
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ xExtent) * 0x100000001b3L;
+        hash = (hash ^ yExtent) * 0x100000001b3L;
+        for (long word : words) {
+            hash = (hash ^ word) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public void setBlocked(int cell, boolean blocked) {
+        if (isBlocked(cell) != blocked) {
+            version++;
+        }
+        if (blocked) {
+            words[cell >>> 6] |= 1L << cell;
+        } else {
+            words[cell >>> 6] &= ~(1L << cell);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Indexed binary min-heap used as the A* frontier. Entries are grid cells identified by their
+ * index (y * xExtent + x), so the heap can find an entry in O(1) and support decrease-key in
+ * O(log n) instead of scanning a list for the best node.
+ *
+ * Entries are ordered by their primary key (the f-cost for A*). Ties are broken by the secondary
+ * key, smaller first, which matches the old behaviour of preferring the node with the lower g-cost.
+ */
+public class OpenSet {
+
+    private final int[] heap;      // heap slot -> cell
+    private final int[] position;  // cell -> heap slot, or -1 when the cell is not in the heap
+    private final int[] primary;   // cell -> primary key
+    private final int[] secondary; // cell -> secondary key
+    private int size;
+
+    /**
+     * @param capacity Number of cells in the grid. Every cell index must be in [0, capacity)
+     */
+    public OpenSet(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        primary = new int[capacity];
+        secondary = new int[capacity];
+        java.util.Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int cell) {
+        return position[cell] >= 0;
+    }
+
+    /**
+     * @param index Heap slot in [0, size())
+     * @return The cell stored in the slot, for visiting every queued cell in no particular order
+     */
+    public int cellAt(int index) {
+        return heap[index];
+    }
+
+    /**
+     * @return The cell with the smallest key without removing it
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    public int peekPrimary() {
+        return primary[heap[0]];
+    }
+
+    public int peekSecondary() {
+        return secondary[heap[0]];
+    }
+
+    /**
+     * Adds the cell to the heap, or updates its keys if it is already there. The keys may move in
+     * either direction, so this covers decrease-key as well as the key increases D* style planners need.
+     *
+     * @param cell Cell index
+     * @param key Primary key (f-cost)
+     * @param tieBreak Secondary key used when primary keys are equal
+     */
+    public void push(int cell, int key, int tieBreak) {
+        int slot = position[cell];
+        primary[cell] = key;
+        secondary[cell] = tieBreak;
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = cell;
+            position[cell] = slot;
+            siftUp(slot);
+        } else {
+            siftUp(slot);
+            siftDown(position[cell]);
+        }
+    }
+
+    /**
+     * Removes and returns the cell with the smallest key.
+     *
+     * @return Cell index
+     */
+    public int pop() {
+        int top = heap[0];
+        removeAt(0);
+        return top;
+    }
+
+    /**
+     * Removes the cell from the heap if present.
+     *
+     * @param cell Cell index
+     */
+    public void remove(int cell) {
+        int slot = position[cell];
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    /**
+     * Empties the heap. Only the entries that are still queued are touched, so this is cheap
+     * compared to re-allocating the heap for every search.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int slot) {
+        int removed = heap[slot];
+        position[removed] = -1;
+        size--;
+        if (slot == size) {
+            return;
+        }
+        int last = heap[size];
+        heap[slot] = last;
+        position[last] = slot;
+        siftUp(slot);
+        siftDown(position[last]);
+    }
+
+    private boolean less(int a, int b) {
+        if (primary[a] != primary[b]) {
+            return primary[a] < primary[b];
+        }
+        return secondary[a] < secondary[b];
+    }
+
+    private void siftUp(int slot) {
+        int cell = heap[slot];
+        while (slot > 0) {
+            int parentSlot = (slot - 1) >>> 1;
+            int parent = heap[parentSlot];
+            if (!less(cell, parent)) {
+                break;
+            }
+            heap[slot] = parent;
+            position[parent] = slot;
+            slot = parentSlot;
+        }
+        heap[slot] = cell;
+        position[cell] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int cell = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && less(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!less(heap[child], cell)) {
+                break;
+            }
+            heap[slot] = heap[child];
+            position[heap[child]] = slot;
+            slot = child;
+        }
+        heap[slot] = cell;
+        position[cell] = slot;
+    }
+}
@@ -0,0 +1,401 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hash distributed A* (HDA*, Kishimoto, Fukunaga and Botea 2009) on the 8-connected grid where
+ * every move costs 1, with the Chebyshev distance as heuristic.
+ *
+ * Every cell belongs to one worker thread, chosen by a hash of the 4x4 block it lies in so that
+ * neighbouring cells usually stay on the same worker. Only the owner reads and writes a cell's
+ * cost and parent, so the shared arrays need no locks. A worker expands the cells of its own open
+ * list and sends every neighbour owned by another worker through that worker's lock-free inbox,
+ * in batches.
+ *
+ * The best path cost found so far is shared, and nodes whose f-cost reaches it are dropped. A
+ * single counter holds the messages in flight plus one for every worker with open nodes. When it
+ * drops to zero no node with a smaller f-cost is left anywhere, so the best path is optimal.
+ */
+public class ParallelAstar {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    // nodes per message, each is cell, g and parent
+    private static final int BATCH = 64;
+    // expansions between flushes of partly filled batches
+    private static final int FLUSH_INTERVAL = 32;
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private final int threads;
+    private final ExecutorService pool;
+    private final Worker[] workers;
+
+    // per cell, written only by the owning worker
+    private final int[] gCost;
+    private final int[] cameFrom;
+    private final int[] stamp;
+    private int generation;
+
+    private final AtomicInteger bestCost = new AtomicInteger();
+    private final AtomicLong outstanding = new AtomicLong();
+    private volatile boolean finished;
+    private final SearchStats stats = new SearchStats();
+
+    private int goalCell;
+    private int enemyCell;
+
+    /**
+     * @param obstacles Static obstacles, shared read-only by every worker
+     * @param threads Number of worker threads
+     */
+    public ParallelAstar(ObstacleGrid obstacles, int threads) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        this.threads = Math.max(1, threads);
+        int cellCount = xExtent * yExtent;
+        gCost = new int[cellCount];
+        cameFrom = new int[cellCount];
+        stamp = new int[cellCount];
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "astar-hda-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers = new Worker[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    /**
+     * @return Counters of the last search, summed over the workers
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach
+     * @param enemyCell Cell that is blocked for this search only, or -1
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell, int enemyCell) {
+        this.goalCell = goalCell;
+        this.enemyCell = enemyCell;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        bestCost.set(Integer.MAX_VALUE);
+        finished = false;
+        for (Worker worker : workers) {
+            worker.reset();
+        }
+
+        // the start is the only node in flight until its owner picks it up
+        outstanding.set(1);
+        workers[owner(startCell)].inbox.add(new int[] {1, startCell, 0, -1});
+
+        List<Future<?>> running = new ArrayList<>(threads);
+        for (Worker worker : workers) {
+            running.add(pool.submit(worker));
+        }
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            finished = true;
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        stats.reset();
+        for (Worker worker : workers) {
+            stats.add(worker.stats);
+        }
+        if (bestCost.get() == Integer.MAX_VALUE) {
+            return null;
+        }
+        // every worker has finished, so all parents are visible here
+        int[] cells = new int[Math.max(0, bestCost.get() - 1)];
+        int index = cells.length;
+        for (int cell = cameFrom[goalCell]; cell != startCell && cell != -1; cell = cameFrom[cell]) {
+            cells[--index] = cell;
+        }
+        return cells;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private int owner(int cell) {
+        int block = (cell / xExtent >> 2) * ((xExtent + 3) >> 2) + (cell % xExtent >> 2);
+        return ((block * 0x9E3779B1) >>> 8) % threads;
+    }
+
+    private int heuristic(int cell) {
+        return Math.max(Math.abs(cell % xExtent - goalCell % xExtent), Math.abs(cell / xExtent - goalCell / xExtent));
+    }
+
+    private final class Worker implements Runnable {
+
+        final int id;
+        final ConcurrentLinkedQueue<int[]> inbox = new ConcurrentLinkedQueue<>();
+        final SearchStats stats = new SearchStats();
+        final NodeHeap open = new NodeHeap();
+        final int[][] outbox;
+        boolean active;
+
+        Worker(int id) {
+            this.id = id;
+            outbox = new int[threads][];
+        }
+
+        void reset() {
+            inbox.clear();
+            open.clear();
+            stats.reset();
+            active = false;
+            for (int i = 0; i < threads; i++) {
+                outbox[i] = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            int sinceFlush = 0;
+            while (!finished) {
+                for (int[] batch = inbox.poll(); batch != null; batch = inbox.poll()) {
+                    for (int i = 1; i < batch[0] * 3; i += 3) {
+                        receive(batch[i], batch[i + 1], batch[i + 2]);
+                    }
+                    // count this worker as busy before the batch stops counting
+                    if (!active && hasWork()) {
+                        active = true;
+                        outstanding.incrementAndGet();
+                    }
+                    if (outstanding.addAndGet(-batch[0]) == 0) {
+                        finished = true;
+                    }
+                }
+
+                if (hasWork()) {
+                    expand(open.pop());
+                    if (++sinceFlush == FLUSH_INTERVAL) {
+                        flush();
+                        sinceFlush = 0;
+                    }
+                    continue;
+                }
+
+                // out of useful nodes: hand on what is buffered, then stop counting as busy
+                flush();
+                sinceFlush = 0;
+                open.clear();
+                if (active) {
+                    active = false;
+                    if (outstanding.decrementAndGet() == 0) {
+                        finished = true;
+                    }
+                } else if (outstanding.get() == 0) {
+                    finished = true;
+                } else {
+                    // yield rather than spin, the pool may have more threads than free cores
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * @return true if the open list holds a node that could still improve on the best path
+         */
+        boolean hasWork() {
+            while (!open.isEmpty()) {
+                int cell = open.peekCell();
+                int g = open.peekG();
+                if (g != gCost[cell] || stamp[cell] != generation) {
+                    // reached more cheaply since it was queued
+                    open.pop();
+                    continue;
+                }
+                return g + heuristic(cell) < bestCost.get();
+            }
+            return false;
+        }
+
+        void receive(int cell, int g, int parent) {
+            if (stamp[cell] == generation && g >= gCost[cell]) {
+                return;
+            }
+            stamp[cell] = generation;
+            gCost[cell] = g;
+            cameFrom[cell] = parent;
+            stats.countGenerated();
+            if (cell == goalCell) {
+                int best = bestCost.get();
+                while (g < best && !bestCost.compareAndSet(best, g)) {
+                    best = bestCost.get();
+                }
+                return;
+            }
+            int f = g + heuristic(cell);
+            if (f < bestCost.get()) {
+                open.push(cell, g, f);
+                stats.observeOpenSetSize(open.size());
+            }
+        }
+
+        void expand(int cell) {
+            stats.countExpanded();
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            int nextG = gCost[cell] + 1;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (next == enemyCell) {
+                    continue;
+                }
+                int target = owner(next);
+                if (target == id) {
+                    receive(next, nextG, cell);
+                } else {
+                    send(target, next, nextG, cell);
+                }
+            }
+        }
+
+        void send(int target, int cell, int g, int parent) {
+            int[] batch = outbox[target];
+            if (batch == null) {
+                batch = new int[1 + 3 * BATCH];
+                outbox[target] = batch;
+            }
+            int slot = 1 + 3 * batch[0]++;
+            batch[slot] = cell;
+            batch[slot + 1] = g;
+            batch[slot + 2] = parent;
+            if (batch[0] == BATCH) {
+                post(target);
+            }
+        }
+
+        void flush() {
+            for (int target = 0; target < threads; target++) {
+                if (outbox[target] != null) {
+                    post(target);
+                }
+            }
+        }
+
+        private void post(int target) {
+            int[] batch = outbox[target];
+            outbox[target] = null;
+            // counted before it becomes visible, so the counter never reads zero with nodes in flight
+            outstanding.addAndGet(batch[0]);
+            workers[target].inbox.add(batch);
+        }
+    }
+
+    /**
+     * Binary min-heap of (f, g, cell) with larger g first among equal f. Entries are not updated
+     * in place; an entry whose g no longer matches the cell's cost is skipped when it surfaces.
+     */
+    private static final class NodeHeap {
+
+        private long[] keys = new long[256];
+        private int[] cells = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void push(int cell, int g, int f) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            // the low half orders larger g first
+            long key = ((long) f << 32) | (~g & 0xffffffffL);
+            int slot = size++;
+            while (slot > 0) {
+                int parentSlot = (slot - 1) >>> 1;
+                if (keys[parentSlot] <= key) {
+                    break;
+                }
+                keys[slot] = keys[parentSlot];
+                cells[slot] = cells[parentSlot];
+                slot = parentSlot;
+            }
+            keys[slot] = key;
+            cells[slot] = cell;
+        }
+
+        int peekCell() {
+            return cells[0];
+        }
+
+        int peekG() {
+            return ~(int) keys[0];
+        }
+
+        int pop() {
+            int top = cells[0];
+            size--;
+            long key = keys[size];
+            int cell = cells[size];
+            int slot = 0;
+            while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[slot] = keys[child];
+                cells[slot] = cells[child];
+                slot = child;
+            }
+            keys[slot] = key;
+            cells[slot] = cell;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * The cells the unit still has to walk through, one bit per cell packed into a long[].
+ *
+ * Lets the agent ask "is this cell on my path?" with a shift and a mask, so checking whether the
+ * enemy footman blocks the path costs the same no matter how long the path is.
+ */
+public class PathCorridor {
+
+    private final int xExtent, yExtent;
+    private final long[] words;
+
+    public PathCorridor(int xExtent, int yExtent) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        this.words = new long[(xExtent * yExtent + 63) >>> 6];
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    public void add(int x, int y) {
+        int cell = y * xExtent + x;
+        words[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Drops a cell once the unit has reached it.
+     */
+    public void remove(int x, int y) {
+        int cell = y * xExtent + x;
+        words[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * @return true if the cell is on the remaining path. Cells outside the map never are
+     */
+    public boolean contains(int x, int y) {
+        if (x < 0 || y < 0 || x >= xExtent || y >= yExtent) {
+            return false;
+        }
+        int cell = y * xExtent + x;
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+}
@@ -0,0 +1,181 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Running totals over every path search of one agent: node counters, peak open set size, replans
+ * and a latency histogram with power-of-two buckets. Recording a search is a handful of additions,
+ * so the counters are always kept; they can be published over JMX and summarised in terminalStep.
+ *
+ * The agent records from the SEPIA thread while a JMX client reads from its own thread, so every
+ * access is synchronized.
+ */
+public class PlanningMetrics implements PlanningMetricsMBean {
+
+    public static final int HISTOGRAM_BUCKETS = 32;
+
+    private long searchCount;
+    private long replanCount;
+    private long alternativeSwitchCount;
+    private long nodesExpanded;
+    private long nodesGenerated;
+    private int peakOpenSetSize;
+    private long lastLatencyNanos;
+    private long maxLatencyNanos;
+    private long totalLatencyNanos;
+    private final long[] latencyHistogram = new long[HISTOGRAM_BUCKETS];
+
+    private ObjectName registeredName;
+
+    /**
+     * Records one search.
+     *
+     * @param stats Node counters of the search, or null if the planner does not count nodes
+     * @param latencyNanos Wall-clock time the search took
+     */
+    public synchronized void recordSearch(SearchStats stats, long latencyNanos) {
+        searchCount++;
+        if (stats != null) {
+            nodesExpanded += stats.getExpanded();
+            nodesGenerated += stats.getGenerated();
+            peakOpenSetSize = Math.max(peakOpenSetSize, stats.getPeakOpenSetSize());
+        }
+        lastLatencyNanos = latencyNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+        totalLatencyNanos += latencyNanos;
+        latencyHistogram[bucket(latencyNanos / 1000)]++;
+    }
+
+    public synchronized void countReplan() {
+        replanCount++;
+    }
+
+    public synchronized void countAlternativeSwitch() {
+        alternativeSwitchCount++;
+    }
+
+    @Override
+    public synchronized long getSearchCount() {
+        return searchCount;
+    }
+
+    @Override
+    public synchronized long getReplanCount() {
+        return replanCount;
+    }
+
+    @Override
+    public synchronized long getAlternativeSwitchCount() {
+        return alternativeSwitchCount;
+    }
+
+    @Override
+    public synchronized long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    @Override
+    public synchronized long getNodesGenerated() {
+        return nodesGenerated;
+    }
+
+    @Override
+    public synchronized int getPeakOpenSetSize() {
+        return peakOpenSetSize;
+    }
+
+    @Override
+    public synchronized long getLastLatencyMicros() {
+        return lastLatencyNanos / 1000;
+    }
+
+    @Override
+    public synchronized long getMaxLatencyMicros() {
+        return maxLatencyNanos / 1000;
+    }
+
+    @Override
+    public synchronized double getMeanLatencyMicros() {
+        return searchCount == 0 ? 0 : totalLatencyNanos / 1000.0 / searchCount;
+    }
+
+    @Override
+    public synchronized long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * @param fraction Fraction of searches, e.g. 0.99
+     * @return Upper bound in microseconds of the histogram bucket that holds the given fraction of
+     *         searches, accurate to a factor of two
+     */
+    public synchronized long getLatencyPercentileMicros(double fraction) {
+        long wanted = (long) Math.ceil(fraction * searchCount);
+        long seen = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            seen += latencyHistogram[i];
+            if (seen >= wanted && seen > 0) {
+                return (1L << (i + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        searchCount = 0;
+        replanCount = 0;
+        alternativeSwitchCount = 0;
+        nodesExpanded = 0;
+        nodesGenerated = 0;
+        peakOpenSetSize = 0;
+        lastLatencyNanos = 0;
+        maxLatencyNanos = 0;
+        totalLatencyNanos = 0;
+        Arrays.fill(latencyHistogram, 0);
+    }
+
+    /**
+     * Publishes the metrics in the platform MBean server. An agent registered earlier under the
+     * same name, e.g. from a previous episode, is replaced.
+     *
+     * @param name Object name, e.g. "edu.cwru.sepia.agent:type=PlanningMetrics,player=0"
+     */
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            System.err.println("Unable to register planning metrics as " + name + ": " + e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            System.err.println("Unable to unregister planning metrics: " + e.getMessage());
+        }
+        registeredName = null;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < 2) {
+            return 0;
+        }
+        return Math.min(HISTOGRAM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+}
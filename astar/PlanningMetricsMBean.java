@@ -0,0 +1,49 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Management interface of {@link PlanningMetrics}. Every getter shows up as a read-only
+ * attribute in jconsole or any other JMX client.
+ */
+public interface PlanningMetricsMBean {
+
+    /**
+     * @return Number of findPath calls recorded
+     */
+    long getSearchCount();
+
+    /**
+     * @return Number of times shouldReplanPath asked for a new path
+     */
+    long getReplanCount();
+
+    /**
+     * @return Number of replans served by switching to a precomputed alternative route instead of searching
+     */
+    long getAlternativeSwitchCount();
+
+    long getNodesExpanded();
+
+    long getNodesGenerated();
+
+    /**
+     * @return Largest open set seen in any single search
+     */
+    int getPeakOpenSetSize();
+
+    long getLastLatencyMicros();
+
+    long getMaxLatencyMicros();
+
+    double getMeanLatencyMicros();
+
+    /**
+     * @return Search counts per latency bucket. Bucket 0 holds searches under 2 microseconds,
+     *         bucket i > 0 holds searches of [2^i, 2^(i+1)) microseconds
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * Clears every counter, e.g. before the next run of a regression scenario.
+     */
+    void reset();
+}
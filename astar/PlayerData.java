@@ -0,0 +1,62 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Format of the data the agent keeps between games through savePlayerData and loadPlayerData:
+ * a magic number and version followed by named sections, each written as its name, its length
+ * and its bytes, and an empty name at the end. Readers skip sections they do not know, so new
+ * kinds of data can be added without breaking old saves.
+ */
+public final class PlayerData {
+
+    private static final int MAGIC = 0x41535044; // "ASPD"
+    private static final int VERSION = 1;
+
+    private PlayerData() {
+    }
+
+    /**
+     * Writes the sections without closing the stream, which belongs to the caller.
+     */
+    public static void write(OutputStream os, Map<String, byte[]> sections) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+            out.writeUTF(section.getKey());
+            out.writeInt(section.getValue().length);
+            out.write(section.getValue());
+        }
+        out.writeUTF("");
+        out.flush();
+    }
+
+    /**
+     * @return Sections by name in the order they were written
+     * @throws IOException if the stream does not hold data written by {@link #write}
+     */
+    public static Map<String, byte[]> read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not AstarAgent player data");
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Player data version " + version + " is newer than " + VERSION);
+        }
+        Map<String, byte[]> sections = new LinkedHashMap<>();
+        for (String name = in.readUTF(); !name.isEmpty(); name = in.readUTF()) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            sections.put(name, bytes);
+        }
+        return sections;
+    }
+}
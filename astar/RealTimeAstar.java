@@ -0,0 +1,265 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Real-Time Adaptive A* (RTAA*, Koenig and Likhachev 2006): an agent-centred search that expands
+ * at most a fixed number of cells around the unit, heads for the most promising cell of the
+ * frontier and learns a better heuristic on the way.
+ *
+ * After each lookahead every expanded cell s gets h(s) = f(best) - g(s), where best is the cell
+ * the search would have expanded next. With a consistent heuristic the learned values stay
+ * consistent and only grow, so a unit that is sent to the same goal again and again ends up
+ * following an optimal path. The learned values belong to one map and one goal and can be
+ * written out and read back between games.
+ *
+ * A lookahead that runs into a cell blocked for this search only, such as the enemy footman's,
+ * learns into a second table that is dropped as soon as that cell changes, because its values
+ * could overestimate once the cell is free again. Only the first table is written out. For the
+ * same reason a tree that is cut down drops everything learned, see {@link #setBlocked}.
+ */
+public class RealTimeAstar {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private final int lookahead;
+    private final SearchArena arena;
+    private final int[] expanded;
+
+    // learned distance to goalCell, 0 where nothing was learned yet
+    private final int[] learned;
+    private int learnedCount;
+    // learned while the current enemy cell was blocked, valid where blockedStamp matches
+    private final int[] blockedLearned;
+    private final int[] blockedStamp;
+    private int blockedGeneration = 1;
+    private int blockedCount;
+    private int blockedCell = -1;
+    private int goalCell = -1;
+    private boolean reachedGoal;
+
+    /**
+     * @param obstacles Trees of the map. The grid is copied, later changes are reported through setBlocked
+     * @param lookahead Number of cells expanded per search
+     */
+    public RealTimeAstar(ObstacleGrid obstacles, int lookahead) {
+        this.obstacles = new ObstacleGrid(obstacles);
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        this.lookahead = Math.max(1, lookahead);
+        this.arena = new SearchArena(this.obstacles);
+        this.expanded = new int[this.lookahead];
+        this.learned = new int[obstacles.cellCount()];
+        this.blockedLearned = new int[obstacles.cellCount()];
+        this.blockedStamp = new int[obstacles.cellCount()];
+    }
+
+    /**
+     * @return Counters of the last search
+     */
+    public SearchStats getStats() {
+        return arena.getStats();
+    }
+
+    /**
+     * @return Number of cells with a learned heuristic value
+     */
+    public int getLearnedCount() {
+        return learnedCount;
+    }
+
+    /**
+     * Records that a cell became blocked or free. A freed cell may open a shortcut that makes the
+     * learned values overestimate, so they are dropped; blocking a cell only makes distances
+     * longer and keeps them.
+     */
+    public void setBlocked(int cell, boolean value) {
+        if (obstacles.isBlocked(cell) == value) {
+            return;
+        }
+        obstacles.setBlocked(cell, value);
+        if (!value) {
+            Arrays.fill(learned, 0);
+            learnedCount = 0;
+            blockedGeneration++;
+            blockedCount = 0;
+        }
+    }
+
+    /**
+     * @return true if the last search reached the goal, so its path leads all the way there
+     */
+    public boolean reachedGoal() {
+        return reachedGoal;
+    }
+
+    /**
+     * @return true if the learned values were made for this map and goal
+     */
+    public boolean matches(ObstacleGrid grid, int goalCell) {
+        return grid.getXExtent() == xExtent && grid.getYExtent() == yExtent
+                && grid.fingerprint() == obstacles.fingerprint() && goalCell == this.goalCell;
+    }
+
+    /**
+     * Runs one lookahead and learns from it.
+     *
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach, e.g. the townhall; learned values for another goal are dropped
+     * @param enemyCell Cell that is blocked for this search only, or -1
+     * @return Cells to move through in order to the most promising cell of the frontier, excluding
+     *         the start and the goal, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell, int enemyCell) {
+        if (goalCell != this.goalCell) {
+            Arrays.fill(learned, 0);
+            learnedCount = 0;
+            this.goalCell = goalCell;
+            blockedCell = -2;
+        }
+        if (enemyCell != blockedCell) {
+            blockedGeneration++;
+            blockedCount = 0;
+            blockedCell = enemyCell;
+        }
+        arena.reset();
+        if (enemyCell >= 0) {
+            arena.block(enemyCell);
+        }
+        OpenSet openSet = arena.getOpenSet();
+        arena.open(startCell, 0, -1, heuristic(startCell));
+
+        int expandedCount = 0;
+        boolean sawBlocked = false;
+        while (!openSet.isEmpty()) {
+            int currentCell = openSet.peek();
+            if (currentCell == goalCell || expandedCount == lookahead) {
+                break;
+            }
+            openSet.pop();
+            arena.close(currentCell);
+            expanded[expandedCount++] = currentCell;
+
+            int col = currentCell % xExtent;
+            int row = currentCell / xExtent;
+            int nextG = arena.getGCost(currentCell) + 1;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int x = col + NEIGHBOUR_X[i];
+                int y = row + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(x, y)) {
+                    continue;
+                }
+                int cell = y * xExtent + x;
+                if (cell == enemyCell) {
+                    sawBlocked = true;
+                    continue;
+                }
+                if (arena.getState(cell) == SearchArena.CLOSED || nextG >= arena.getGCost(cell)) {
+                    continue;
+                }
+                arena.open(cell, nextG, currentCell, nextG + heuristic(cell));
+            }
+        }
+        if (openSet.isEmpty()) {
+            reachedGoal = false;
+            return null;
+        }
+
+        int best = openSet.peek();
+        reachedGoal = best == goalCell;
+        // values derived from the blocked cell, directly or through the second table, stay out of the first
+        boolean keep = !sawBlocked && blockedCount == 0;
+        int bestF = arena.getGCost(best) + heuristic(best);
+        for (int i = 0; i < expandedCount; i++) {
+            int cell = expanded[i];
+            int value = bestF - arena.getGCost(cell);
+            if (value <= heuristic(cell)) {
+                continue;
+            }
+            if (keep) {
+                if (learned[cell] == 0) {
+                    learnedCount++;
+                }
+                learned[cell] = value;
+            } else {
+                blockedStamp[cell] = blockedGeneration;
+                blockedLearned[cell] = value;
+                blockedCount++;
+            }
+        }
+        return buildPath(startCell, best);
+    }
+
+    /**
+     * Writes the learned values of the current goal, only for the cells that have one.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(obstacles.fingerprint());
+        out.writeInt(xExtent);
+        out.writeInt(yExtent);
+        out.writeInt(goalCell);
+        out.writeInt(learnedCount);
+        for (int cell = 0; cell < learned.length && goalCell >= 0; cell++) {
+            if (learned[cell] != 0) {
+                out.writeInt(cell);
+                out.writeInt(learned[cell]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the learned values with ones written by {@link #write(DataOutput)}.
+     *
+     * @return false, leaving the values as they were, if they were learned on another map
+     */
+    public boolean read(DataInput in) throws IOException {
+        long fingerprint = in.readLong();
+        int x = in.readInt();
+        int y = in.readInt();
+        if (fingerprint != obstacles.fingerprint() || x != xExtent || y != yExtent) {
+            return false;
+        }
+        int goal = in.readInt();
+        int count = in.readInt();
+        Arrays.fill(learned, 0);
+        learnedCount = 0;
+        goalCell = goal;
+        blockedCell = -2;
+        for (int i = 0; i < count; i++) {
+            int cell = in.readInt();
+            int value = in.readInt();
+            if (cell < 0 || cell >= learned.length) {
+                throw new IOException("Learned value for cell " + cell + " is off the map");
+            }
+            learned[cell] = value;
+            learnedCount++;
+        }
+        return true;
+    }
+
+    private int heuristic(int cell) {
+        int distance = Math.max(Math.abs(cell % xExtent - goalCell % xExtent), Math.abs(cell / xExtent - goalCell / xExtent));
+        int value = Math.max(distance, learned[cell]);
+        return blockedStamp[cell] == blockedGeneration ? Math.max(value, blockedLearned[cell]) : value;
+    }
+
+    /**
+     * Walks back from the frontier cell; the goal and the start position are not part of the path.
+     */
+    private int[] buildPath(int startCell, int endCell) {
+        int length = arena.getGCost(endCell) - (endCell == goalCell ? 1 : 0);
+        int[] cells = new int[Math.max(0, length)];
+        int index = cells.length;
+        int cell = endCell == goalCell ? arena.getCameFrom(endCell) : endCell;
+        for (; cell != startCell && cell != -1; cell = arena.getCameFrom(cell)) {
+            cells[--index] = cell;
+        }
+        return cells;
+    }
+}
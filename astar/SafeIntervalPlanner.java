@@ -0,0 +1,290 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Safe Interval Path Planning (SIPP, Phillips and Likhachev 2011) against the predicted
+ * trajectory of the enemy footman, on the 8-connected grid where every move or turn of waiting
+ * costs 1.
+ *
+ * A search in space and time would need a node per cell and turn. SIPP instead splits the time
+ * line of every cell into safe intervals, the maximal runs of turns in which the enemy is not
+ * expected there, and searches (cell, interval) pairs keeping only the earliest arrival in each.
+ * Cells the enemy never passes have the single interval [0, infinity) and behave exactly like
+ * plain A*, so the search costs little more than A* while it can wait for the enemy to pass
+ * instead of walking around it or running into it.
+ *
+ * Turn 0 is the turn the plan is made on. A unit may not enter a cell on the turn the enemy is
+ * expected there or on the turn after it was there, which also rules out swapping cells with the
+ * enemy. A trajectory that ends early means the enemy stays on its last cell for good.
+ */
+public class SafeIntervalPlanner {
+
+    public static final int FOREVER = Integer.MAX_VALUE;
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, cellCount;
+
+    // the safe intervals of the cells the enemy passes, valid where intervalStamp matches
+    private final int[] intervalStamp;
+    private final int[] firstInterval;
+    private final int[] intervalCount;
+    private int[] intervalCell = new int[0];
+    private int[] intervalStart = new int[0];
+    private int[] intervalEnd = new int[0];
+
+    // per state: a cell below cellCount stands for its only interval, cellCount + i for interval i
+    private int[] gCost;
+    private int[] cameFrom;
+    private int[] stamp;
+    private boolean[] closed;
+    private OpenSet openSet;
+    private int generation;
+    private final SearchStats stats = new SearchStats();
+
+    public SafeIntervalPlanner(ObstacleGrid obstacles) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.cellCount = obstacles.cellCount();
+        intervalStamp = new int[cellCount];
+        firstInterval = new int[cellCount];
+        intervalCount = new int[cellCount];
+        allocateStates(0);
+    }
+
+    /**
+     * @return Counters of the last search
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param trajectory Predicted cell of the enemy on turn 0, 1, ...
+     * @param parked true if the enemy stays on the last cell of the trajectory after it ends
+     * @return true if a unit may not be on the cell on the given turn
+     */
+    public static boolean isUnsafe(int[] trajectory, boolean parked, int cell, int turn) {
+        int last = trajectory.length - 1;
+        if (last < 0) {
+            return false;
+        }
+        if (turn <= last && trajectory[turn] == cell) {
+            return true;
+        }
+        if (turn >= 1 && turn - 1 <= last && trajectory[turn - 1] == cell) {
+            return true;
+        }
+        return parked && turn > last && trajectory[last] == cell;
+    }
+
+    /**
+     * @param startCell Cell of the unit on turn 0
+     * @param goalCell Cell to reach, e.g. the townhall; the enemy is never expected on it
+     * @param trajectory Predicted cell of the enemy on turn 0, 1, ..., empty if there is none
+     * @param parked true if the enemy stays on the last cell of the trajectory after it ends
+     * @return Cell of the unit on turn 1, 2, ... up to the turn before it reaches the goal, the
+     *         same cell twice in a row where it waits, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell, int[] trajectory, boolean parked) {
+        stats.reset();
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(intervalStamp, 0);
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        buildIntervals(goalCell, trajectory, parked);
+        openSet.clear();
+
+        int startState = stateAt(startCell, 0);
+        if (startState < 0) {
+            return null;
+        }
+        int goalX = goalCell % xExtent;
+        int goalY = goalCell / xExtent;
+        open(startState, 0, -1, distance(startCell, goalX, goalY));
+
+        while (!openSet.isEmpty()) {
+            int state = openSet.pop();
+            int cell = cellOf(state);
+            if (cell == goalCell) {
+                return buildPath(state);
+            }
+            closed[state] = true;
+            stats.countExpanded();
+
+            int g = gCost[state];
+            // the unit can wait here until the interval ends and move on the turn after
+            int latest = endOf(state) == FOREVER ? FOREVER : endOf(state) + 1;
+            int col = cell % xExtent;
+            int row = cell / xExtent;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int x = col + NEIGHBOUR_X[i];
+                int y = row + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(x, y)) {
+                    continue;
+                }
+                int next = y * xExtent + x;
+                int first = next, count = 1;
+                if (intervalStamp[next] == generation) {
+                    first = cellCount + firstInterval[next];
+                    count = intervalCount[next];
+                }
+                for (int k = 0; k < count; k++) {
+                    int nextState = first + k;
+                    int arrival = Math.max(g + 1, startOf(nextState));
+                    if (arrival > latest) {
+                        // later intervals start later still
+                        break;
+                    }
+                    if (arrival > endOf(nextState) || closed(nextState) || arrival >= gOf(nextState)) {
+                        continue;
+                    }
+                    open(nextState, arrival, state, arrival + distance(next, goalX, goalY));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits the time line of every cell on the trajectory into safe intervals.
+     */
+    private void buildIntervals(int goalCell, int[] trajectory, boolean parked) {
+        // unsafe turns of each cell in order, as pairs of first and last turn
+        Map<Integer, List<int[]>> unsafe = new LinkedHashMap<>();
+        int last = trajectory.length - 1;
+        for (int turn = 0; turn <= last; turn++) {
+            int cell = trajectory[turn];
+            if (cell == goalCell) {
+                continue;
+            }
+            int until = turn == last && parked ? FOREVER : turn + 1;
+            List<int[]> runs = unsafe.computeIfAbsent(cell, c -> new ArrayList<>());
+            int[] previous = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (previous != null && previous[1] >= turn - 1) {
+                previous[1] = Math.max(previous[1], until);
+            } else {
+                runs.add(new int[] {turn, until});
+            }
+        }
+
+        int intervals = 0;
+        for (List<int[]> runs : unsafe.values()) {
+            intervals += runs.size() + 1;
+        }
+        if (intervals > intervalStart.length) {
+            intervalCell = new int[intervals];
+            intervalStart = new int[intervals];
+            intervalEnd = new int[intervals];
+            allocateStates(intervals);
+        }
+
+        int index = 0;
+        for (Map.Entry<Integer, List<int[]>> entry : unsafe.entrySet()) {
+            int cell = entry.getKey();
+            intervalStamp[cell] = generation;
+            firstInterval[cell] = index;
+            int from = 0;
+            for (int[] run : entry.getValue()) {
+                if (run[0] > from) {
+                    addInterval(index++, cell, from, run[0] - 1);
+                }
+                from = run[1] == FOREVER ? FOREVER : run[1] + 1;
+            }
+            if (from != FOREVER) {
+                addInterval(index++, cell, from, FOREVER);
+            }
+            intervalCount[cell] = index - firstInterval[cell];
+        }
+    }
+
+    private void addInterval(int index, int cell, int start, int end) {
+        intervalCell[index] = cell;
+        intervalStart[index] = start;
+        intervalEnd[index] = end;
+    }
+
+    private void allocateStates(int intervals) {
+        int states = cellCount + intervals;
+        gCost = new int[states];
+        cameFrom = new int[states];
+        stamp = new int[states];
+        closed = new boolean[states];
+        openSet = new OpenSet(states);
+    }
+
+    /**
+     * @return The state of the cell's interval containing the turn, or -1 if the cell is unsafe then
+     */
+    private int stateAt(int cell, int turn) {
+        if (intervalStamp[cell] != generation) {
+            return cell;
+        }
+        for (int k = 0; k < intervalCount[cell]; k++) {
+            int state = cellCount + firstInterval[cell] + k;
+            if (startOf(state) <= turn && turn <= endOf(state)) {
+                return state;
+            }
+        }
+        return -1;
+    }
+
+    private int cellOf(int state) {
+        return state < cellCount ? state : intervalCell[state - cellCount];
+    }
+
+    private int startOf(int state) {
+        return state < cellCount ? 0 : intervalStart[state - cellCount];
+    }
+
+    private int endOf(int state) {
+        return state < cellCount ? FOREVER : intervalEnd[state - cellCount];
+    }
+
+    private int gOf(int state) {
+        return stamp[state] == generation ? gCost[state] : Integer.MAX_VALUE;
+    }
+
+    private boolean closed(int state) {
+        return stamp[state] == generation && closed[state];
+    }
+
+    private void open(int state, int g, int parent, int f) {
+        stamp[state] = generation;
+        gCost[state] = g;
+        cameFrom[state] = parent;
+        closed[state] = false;
+        openSet.push(state, f, g);
+        stats.countGenerated();
+        stats.observeOpenSetSize(openSet.size());
+    }
+
+    /**
+     * Walks back from the goal, repeating a cell for every turn spent waiting on it.
+     */
+    private int[] buildPath(int goalState) {
+        int[] cells = new int[Math.max(0, gCost[goalState] - 1)];
+        int arrival = gCost[goalState];
+        for (int state = cameFrom[goalState]; state != -1; state = cameFrom[state]) {
+            int cell = cellOf(state);
+            for (int turn = Math.max(1, gCost[state]); turn < arrival; turn++) {
+                cells[turn - 1] = cell;
+            }
+            arrival = gCost[state];
+        }
+        return cells;
+    }
+
+    private int distance(int cell, int goalX, int goalY) {
+        return Math.max(Math.abs(cell % xExtent - goalX), Math.abs(cell / xExtent - goalY));
+    }
+}
@@ -0,0 +1,155 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Per-cell bookkeeping for a grid search stored in flat primitive arrays sized xExtent * yExtent.
+ * The static obstacles come from a shared {@link ObstacleGrid}; cells blocked only for one search,
+ * such as the enemy footman's position, are marked with {@link #block(int)}.
+ *
+ * The arena is allocated once per map and reused for every search. Instead of clearing the arrays
+ * between searches each cell carries the generation it was last written in; a cell whose stamp is
+ * older than the current generation reads as unseen. {@link #reset()} therefore costs O(1) apart
+ * from emptying the open set, and repeated planning allocates nothing.
+ */
+public class SearchArena {
+
+    public static final byte UNSEEN = 0;
+    public static final byte OPEN = 1;
+    public static final byte CLOSED = 2;
+    public static final byte BLOCKED = 3;
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private final int[] gCost;
+    private final int[] cameFrom;
+    private final int[] stamp;
+    private final byte[] state;
+    private final OpenSet openSet;
+    private final SearchStats stats = new SearchStats();
+    private int generation;
+
+    public SearchArena(ObstacleGrid obstacles) {
+        this.obstacles = obstacles;
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+        int cellCount = xExtent * yExtent;
+        gCost = new int[cellCount];
+        cameFrom = new int[cellCount];
+        stamp = new int[cellCount];
+        state = new byte[cellCount];
+        openSet = new OpenSet(cellCount);
+        generation = 1;
+    }
+
+    /**
+     * Starts a new search. Everything written during the previous search becomes invisible.
+     */
+    public void reset() {
+        openSet.clear();
+        stats.reset();
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            // stamps would wrap around, so pay for one real clear
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    public int getXExtent() {
+        return xExtent;
+    }
+
+    public int getYExtent() {
+        return yExtent;
+    }
+
+    public int cellCount() {
+        return gCost.length;
+    }
+
+    public int cell(int x, int y) {
+        return y * xExtent + x;
+    }
+
+    public ObstacleGrid getObstacles() {
+        return obstacles;
+    }
+
+    public OpenSet getOpenSet() {
+        return openSet;
+    }
+
+    /**
+     * @return Counters of the current search, cleared by {@link #reset()}
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    public byte getState(int cell) {
+        return stamp[cell] == generation ? state[cell] : UNSEEN;
+    }
+
+    /**
+     * @return The best known cost from the start to the cell, or Integer.MAX_VALUE if it has not been reached
+     */
+    public int getGCost(int cell) {
+        return stamp[cell] == generation ? gCost[cell] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return The cell this cell was reached from, or -1 for the start and unseen cells
+     */
+    public int getCameFrom(int cell) {
+        return stamp[cell] == generation ? cameFrom[cell] : -1;
+    }
+
+    /**
+     * @return true if the cell is a static obstacle or was blocked for the current search
+     */
+    public boolean isBlocked(int cell) {
+        return obstacles.isBlocked(cell) || getState(cell) == BLOCKED;
+    }
+
+    /**
+     * Marks the cell as impassable for the current search.
+     */
+    public void block(int cell) {
+        touch(cell);
+        state[cell] = BLOCKED;
+    }
+
+    /**
+     * Records a (better) way of reaching the cell and queues it in the open set.
+     *
+     * @param cell Cell index
+     * @param g Cost from the start
+     * @param parent Cell it was reached from, -1 for the start
+     * @param f Priority in the open set
+     */
+    public void open(int cell, int g, int parent, int f) {
+        touch(cell);
+        gCost[cell] = g;
+        cameFrom[cell] = parent;
+        state[cell] = OPEN;
+        openSet.push(cell, f, g);
+        stats.countGenerated();
+        stats.observeOpenSetSize(openSet.size());
+    }
+
+    public void close(int cell) {
+        touch(cell);
+        state[cell] = CLOSED;
+        stats.countExpanded();
+    }
+
+    private void touch(int cell) {
+        if (stamp[cell] != generation) {
+            stamp[cell] = generation;
+            gCost[cell] = Integer.MAX_VALUE;
+            cameFrom[cell] = -1;
+            state[cell] = UNSEEN;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package edu.cwru.sepia.agent.astar;
+
+/**
+ * Node counters for one search, so different planners can be compared on the same scenario.
+ */
+public class SearchStats {
+
+    private long expanded;
+    private long generated;
+    private int peakOpenSetSize;
+
+    public void reset() {
+        expanded = 0;
+        generated = 0;
+        peakOpenSetSize = 0;
+    }
+
+    /**
+     * Adds the counters of another search, e.g. the second direction of a bidirectional search.
+     */
+    public void add(SearchStats other) {
+        expanded += other.expanded;
+        generated += other.generated;
+        // both open sets are held at the same time, so their peaks add up to a bound on the combined peak
+        peakOpenSetSize += other.peakOpenSetSize;
+    }
+
+    public void countExpanded() {
+        expanded++;
+    }
+
+    public void countGenerated() {
+        generated++;
+    }
+
+    public void observeOpenSetSize(int size) {
+        if (size > peakOpenSetSize) {
+            peakOpenSetSize = size;
+        }
+    }
+
+    /**
+     * @return Number of nodes taken off the open set and expanded
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * @return Number of times a node was added to the open set or had its cost lowered
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * @return Largest number of nodes in the open set at any point of the search
+     */
+    public int getPeakOpenSetSize() {
+        return peakOpenSetSize;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.List;
+
+import edu.cwru.sepia.environment.model.state.ResourceNode;
+import edu.cwru.sepia.environment.model.state.State;
+import edu.cwru.sepia.environment.model.state.Unit;
+
+/**
+ * {@link WorldView} backed by the StateView SEPIA hands to the agent each turn.
+ */
+public class SepiaWorldView implements WorldView {
+
+    private final State.StateView state;
+
+    public SepiaWorldView(State.StateView state) {
+        this.state = state;
+    }
+
+    @Override
+    public int getXExtent() {
+        return state.getXExtent();
+    }
+
+    @Override
+    public int getYExtent() {
+        return state.getYExtent();
+    }
+
+    @Override
+    public int getTurnNumber() {
+        return state.getTurnNumber();
+    }
+
+    @Override
+    public Integer[] getPlayerNumbers() {
+        return state.getPlayerNumbers();
+    }
+
+    @Override
+    public List<Integer> getUnitIds(int playernum) {
+        return state.getUnitIds(playernum);
+    }
+
+    @Override
+    public UnitInfo getUnit(int unitID) {
+        final Unit.UnitView unit = state.getUnit(unitID);
+        if (unit == null) {
+            return null;
+        }
+        return new UnitInfo() {
+            @Override
+            public int getID() {
+                return unit.getID();
+            }
+
+            @Override
+            public int getXPosition() {
+                return unit.getXPosition();
+            }
+
+            @Override
+            public int getYPosition() {
+                return unit.getYPosition();
+            }
+
+            @Override
+            public int getHP() {
+                return unit.getHP();
+            }
+
+            @Override
+            public String getTemplateName() {
+                return unit.getTemplateView().getName();
+            }
+        };
+    }
+
+    @Override
+    public List<Integer> getAllResourceIds() {
+        return state.getAllResourceIds();
+    }
+
+    @Override
+    public ResourceInfo getResourceNode(int resourceID) {
+        final ResourceNode.ResourceView resource = state.getResourceNode(resourceID);
+        if (resource == null) {
+            return null;
+        }
+        return new ResourceInfo() {
+            @Override
+            public int getID() {
+                return resource.getID();
+            }
+
+            @Override
+            public int getXPosition() {
+                return resource.getXPosition();
+            }
+
+            @Override
+            public int getYPosition() {
+                return resource.getYPosition();
+            }
+        };
+    }
+}
@@ -0,0 +1,207 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Plans paths for a group of units in parallel. Each turn the agent hands over the units that need
+ * a new path; their searches run as independent tasks on a ForkJoinPool while the agent thread
+ * carries on, and {@link #await()} waits for the batch. Every worker thread searches in its own
+ * {@link SearchArena}, so the searches share nothing but the read-only obstacle grid.
+ */
+public class SquadPlanner {
+
+    /**
+     * Path and progress of one unit. Written by a worker thread while its search runs and only
+     * read by the agent thread after {@link #await()}.
+     */
+    public static class UnitPlan {
+
+        private final int unitID;
+        private int[] cells;
+        private int cursor;
+        private int lastCell = -1;
+        private int stuckTurns;
+
+        // inputs and results of the pending search
+        private int startCell;
+        private boolean avoidFriends;
+        private final SearchStats stats = new SearchStats();
+        private long latencyNanos;
+
+        UnitPlan(int unitID) {
+            this.unitID = unitID;
+        }
+
+        public int getUnitID() {
+            return unitID;
+        }
+
+        /**
+         * @return true if the unit has a path, possibly already walked to its end
+         */
+        public boolean hasPath() {
+            return cells != null;
+        }
+
+        /**
+         * @return Number of moves in the current path
+         */
+        public int getPathLength() {
+            return cells == null ? 0 : cells.length;
+        }
+
+        /**
+         * @return The cell the unit is moving to, or -1 if the path is done or there is none
+         */
+        public int nextCell() {
+            return cells != null && cursor < cells.length ? cells[cursor] : -1;
+        }
+
+        /**
+         * Updates the progress with the unit's position this turn.
+         *
+         * @param cell Cell the unit is on
+         */
+        public void observe(int cell) {
+            if (cell == nextCell()) {
+                cursor++;
+                stuckTurns = 0;
+            } else if (cell == lastCell && nextCell() != -1) {
+                // the last move did not happen, most likely another unit was in the way
+                stuckTurns++;
+            }
+            lastCell = cell;
+        }
+
+        public int getStuckTurns() {
+            return stuckTurns;
+        }
+
+        /**
+         * @return true if the cell is on the part of the path the unit has not walked yet
+         */
+        public boolean isAhead(int cell) {
+            if (cells == null) {
+                return false;
+            }
+            // squad paths are short next to the map size, so a scan is cheaper than a bitmap per unit
+            for (int i = cursor; i < cells.length; i++) {
+                if (cells[i] == cell) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return Node counters of the unit's last search
+         */
+        public SearchStats getStats() {
+            return stats;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<SearchArena> arenas;
+    private final Map<Integer, UnitPlan> plans = new LinkedHashMap<>();
+    private final List<ForkJoinTask<?>> pending = new ArrayList<>();
+    private LandmarkHeuristic landmarks;
+
+    /**
+     * @param obstacles Static obstacles, shared read-only by every worker
+     * @param parallelism Number of worker threads
+     */
+    public SquadPlanner(ObstacleGrid obstacles, int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.arenas = ThreadLocal.withInitial(() -> new SearchArena(obstacles));
+    }
+
+    /**
+     * @param landmarks Landmark tables of the map used as the heuristic of later searches, or null
+     */
+    public void setLandmarks(LandmarkHeuristic landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    public UnitPlan add(int unitID) {
+        UnitPlan plan = new UnitPlan(unitID);
+        plans.put(unitID, plan);
+        return plan;
+    }
+
+    public void remove(int unitID) {
+        plans.remove(unitID);
+    }
+
+    public Collection<UnitPlan> getPlans() {
+        return plans.values();
+    }
+
+    /**
+     * Starts a search for every unit in the batch and returns without waiting for them.
+     *
+     * @param batch Units that need a new path
+     * @param startCells Cell of each unit in the batch, in the same order
+     * @param avoidFriends For each unit, whether the other units' cells are blocked in its search
+     * @param goalCell Cell to reach, e.g. the townhall
+     * @param enemyCell Cell blocked for every search, or -1
+     * @param friendCells Cells of all units of the squad, blocked for units that avoid friends
+     */
+    public void planAsync(List<UnitPlan> batch, int[] startCells, boolean[] avoidFriends, int goalCell,
+            int enemyCell, int[] friendCells) {
+        for (int i = 0; i < batch.size(); i++) {
+            UnitPlan plan = batch.get(i);
+            plan.startCell = startCells[i];
+            plan.avoidFriends = avoidFriends[i];
+            pending.add(pool.submit(() -> search(plan, goalCell, enemyCell, friendCells)));
+        }
+    }
+
+    /**
+     * Waits for every search started by {@link #planAsync}.
+     */
+    public void await() {
+        for (ForkJoinTask<?> task : pending) {
+            task.join();
+        }
+        pending.clear();
+    }
+
+    public void shutdown() {
+        await();
+        pool.shutdown();
+    }
+
+    private void search(UnitPlan plan, int goalCell, int enemyCell, int[] friendCells) {
+        long startTime = System.nanoTime();
+        SearchArena arena = arenas.get();
+        arena.reset();
+        if (enemyCell >= 0) {
+            arena.block(enemyCell);
+        }
+        if (plan.avoidFriends) {
+            for (int cell : friendCells) {
+                if (cell != plan.startCell) {
+                    arena.block(cell);
+                }
+            }
+        }
+
+        plan.cells = GridAstar.search(arena, plan.startCell, goalCell, landmarks);
+        plan.cursor = 0;
+        plan.stuckTurns = 0;
+        plan.stats.reset();
+        plan.stats.add(arena.getStats());
+        plan.latencyNanos = System.nanoTime() - startTime;
+    }
+}
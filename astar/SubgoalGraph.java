@@ -0,0 +1,473 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Arrays;
+
+/**
+ * Simple subgoal graph (Uras, Koenig and Hernandez 2013) for the 8-connected grid where every
+ * move costs 1 and diagonal moves may pass between two blocked cells.
+ *
+ * Two cells are h-reachable when a path as long as their Chebyshev distance connects them.
+ * Shortest paths only have to leave a straight h-reachable stretch next to the end of an
+ * obstacle: at a free cell whose orthogonal neighbour b is blocked while b has a free cell on at
+ * least one side across the direction from the cell to b. Those cells are the subgoals. They are
+ * linked once per map to every subgoal they reach by an h-reachable path that passes no other
+ * subgoal, which keeps the graph small on maps with long tree walls.
+ *
+ * A query links the start and the goal into the graph the same way, runs A* over the subgoals
+ * and fills every edge back in with a shortest grid path between its ends. Paths are optimal
+ * for the static trees; cells blocked only for one query are left to the caller.
+ *
+ * An edge can span the whole map, so a tree that appears or vanishes may change edges far from
+ * it. A change reported through setBlocked therefore only marks the graph as out of date, and
+ * the caller builds it again as a whole before the next query.
+ */
+public class SubgoalGraph {
+
+    private static final int[] NEIGHBOUR_X = {0, -1, 0, 1, -1, -1, 1, 1};
+    private static final int[] NEIGHBOUR_Y = {-1, 0, 1, 0, -1, 1, 1, -1};
+
+    private final ObstacleGrid obstacles;
+    private final int xExtent, yExtent;
+    private long fingerprint;
+    private int builtVersion;
+
+    // subgoals and their edges in compressed rows: the edges of node n are edgeStart[n] .. edgeStart[n + 1] - 1
+    private int nodeCount;
+    private int[] nodeCell;
+    private final int[] nodeOfCell;
+    private int[] edgeStart;
+    private int[] edgeTarget;
+    private int[] edgeCost;
+
+    // breadth-first search along h-reachable paths
+    private final int[] distance;
+    private final int[] parent;
+    private final int[] stamp;
+    private final int[] queue;
+    private int generation;
+    private final boolean[] tainted;
+    private int[] found = new int[16];
+    private int foundCount;
+    private int targetDistance;
+
+    // graph search, sized once the graph is built; node nodeCount is the start, nodeCount + 1 the goal
+    private OpenSet open;
+    private int[] nodeG;
+    private int[] nodeParent;
+    private int[] nodeStamp;
+    private int searchGeneration;
+    private int[] startLinks = new int[0];
+    private int[] startCosts = new int[0];
+    private int[] goalCost;
+    private final SearchStats stats = new SearchStats();
+
+    private long buildTime; // nsecs
+
+    /**
+     * @param obstacles Trees of the map. The grid is copied, later changes are reported through setBlocked
+     */
+    public SubgoalGraph(ObstacleGrid obstacles) {
+        this.obstacles = new ObstacleGrid(obstacles);
+        this.xExtent = obstacles.getXExtent();
+        this.yExtent = obstacles.getYExtent();
+
+        int cellCount = xExtent * yExtent;
+        nodeOfCell = new int[cellCount];
+        distance = new int[cellCount];
+        parent = new int[cellCount];
+        stamp = new int[cellCount];
+        tainted = new boolean[cellCount];
+        queue = new int[cellCount];
+    }
+
+    /**
+     * Places the subgoals and links every pair that is directly h-reachable.
+     */
+    public void build() {
+        long startTime = System.nanoTime();
+        int cellCount = xExtent * yExtent;
+        fingerprint = obstacles.fingerprint();
+        builtVersion = obstacles.getVersion();
+
+        Arrays.fill(nodeOfCell, -1);
+        nodeCell = new int[64];
+        nodeCount = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (!obstacles.isBlocked(cell) && isSubgoal(cell % xExtent, cell / xExtent)) {
+                if (nodeCount == nodeCell.length) {
+                    nodeCell = Arrays.copyOf(nodeCell, nodeCount * 2);
+                }
+                nodeOfCell[cell] = nodeCount;
+                nodeCell[nodeCount++] = cell;
+            }
+        }
+        nodeCell = Arrays.copyOf(nodeCell, nodeCount);
+
+        edgeStart = new int[nodeCount + 1];
+        edgeTarget = new int[Math.max(16, nodeCount * 4)];
+        edgeCost = new int[edgeTarget.length];
+        int edgeCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node] = edgeCount;
+            scan(nodeCell[node], -1);
+            if (edgeCount + foundCount > edgeTarget.length) {
+                int capacity = Math.max(edgeTarget.length * 2, edgeCount + foundCount);
+                edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+                edgeCost = Arrays.copyOf(edgeCost, capacity);
+            }
+            for (int i = 0; i < foundCount; i++) {
+                edgeTarget[edgeCount] = nodeOfCell[found[i]];
+                edgeCost[edgeCount++] = distance[found[i]];
+            }
+        }
+        edgeStart[nodeCount] = edgeCount;
+        edgeTarget = Arrays.copyOf(edgeTarget, edgeCount);
+        edgeCost = Arrays.copyOf(edgeCost, edgeCount);
+
+        open = new OpenSet(nodeCount + 2);
+        nodeG = new int[nodeCount + 2];
+        nodeParent = new int[nodeCount + 2];
+        nodeStamp = new int[nodeCount + 2];
+        goalCost = new int[nodeCount];
+        Arrays.fill(goalCost, -1);
+        buildTime = System.nanoTime() - startTime;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeStart[nodeCount];
+    }
+
+    /**
+     * @return Time spent in {@link #build()} in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * @return true if the graph was built for a map with these obstacles and no change was reported since
+     */
+    public boolean matches(ObstacleGrid grid) {
+        return isCurrent() && grid.getXExtent() == xExtent && grid.getYExtent() == yExtent && grid.fingerprint() == fingerprint;
+    }
+
+    /**
+     * @return false if cells changed occupancy after the graph was built, so it needs {@link #build()}
+     */
+    public boolean isCurrent() {
+        return obstacles.getVersion() == builtVersion;
+    }
+
+    /**
+     * Records that a cell became blocked or free. The graph stays as it is until it is built again.
+     */
+    public void setBlocked(int cell, boolean value) {
+        obstacles.setBlocked(cell, value);
+    }
+
+    /**
+     * @return Counters of the last query; expanded and generated count subgoals, not cells
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param startCell Cell of the unit
+     * @param goalCell Cell to reach, e.g. the townhall
+     * @return Cells to move through in order, excluding the start and the goal, or null if the goal is unreachable
+     */
+    public int[] search(int startCell, int goalCell) {
+        stats.reset();
+        if (startCell == goalCell) {
+            return new int[0];
+        }
+        int[] straight = straightPath(startCell, goalCell);
+        if (straight != null) {
+            return straight;
+        }
+        int startNode = nodeCount;
+        int goalNode = nodeCount + 1;
+
+        // link the goal first, the start's scan is still needed when the goal is reached directly
+        scan(goalCell, -1);
+        int[] goalLinked = Arrays.copyOf(found, foundCount);
+        for (int cell : goalLinked) {
+            goalCost[nodeOfCell[cell]] = distance[cell];
+        }
+        if (nodeOfCell[goalCell] >= 0) {
+            goalCost[nodeOfCell[goalCell]] = 0;
+        }
+        scan(startCell, goalCell);
+        int directCost = targetDistance;
+        if (startLinks.length < foundCount) {
+            startLinks = new int[found.length];
+            startCosts = new int[found.length];
+        }
+        int startLinkCount = foundCount;
+        for (int i = 0; i < foundCount; i++) {
+            startLinks[i] = nodeOfCell[found[i]];
+            startCosts[i] = distance[found[i]];
+        }
+
+        searchGeneration++;
+        open.clear();
+        relax(-1, startNode, 0, startCell, goalCell);
+        int[] path = null;
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            stats.countExpanded();
+            if (current == goalNode) {
+                path = buildPath(startCell, goalCell);
+                break;
+            }
+            int g = nodeG[current];
+            if (current == startNode) {
+                for (int i = 0; i < startLinkCount; i++) {
+                    relax(current, startLinks[i], g + startCosts[i], nodeCell[startLinks[i]], goalCell);
+                }
+                if (directCost >= 0) {
+                    relax(current, goalNode, g + directCost, goalCell, goalCell);
+                }
+                continue;
+            }
+            for (int e = edgeStart[current]; e < edgeStart[current + 1]; e++) {
+                relax(current, edgeTarget[e], g + edgeCost[e], nodeCell[edgeTarget[e]], goalCell);
+            }
+            if (goalCost[current] >= 0) {
+                relax(current, goalNode, g + goalCost[current], goalCell, goalCell);
+            }
+        }
+
+        for (int cell : goalLinked) {
+            goalCost[nodeOfCell[cell]] = -1;
+        }
+        if (nodeOfCell[goalCell] >= 0) {
+            goalCost[nodeOfCell[goalCell]] = -1;
+        }
+        return path;
+    }
+
+    private void relax(int from, int to, int g, int cell, int goalCell) {
+        if (nodeStamp[to] != searchGeneration) {
+            nodeStamp[to] = searchGeneration;
+            nodeG[to] = Integer.MAX_VALUE;
+        }
+        if (g < nodeG[to]) {
+            nodeG[to] = g;
+            nodeParent[to] = from;
+            open.push(to, g + chebyshev(cell, goalCell), -g);
+            stats.countGenerated();
+            stats.observeOpenSetSize(open.size());
+        }
+    }
+
+    /**
+     * Walks back over the subgoals and fills in the grid path between each pair.
+     */
+    private int[] buildPath(int startCell, int goalCell) {
+        int goalNode = nodeCount + 1;
+        int[] cells = new int[nodeG[goalNode] - 1];
+        int end = goalCell;
+        int index = nodeG[goalNode];
+        for (int node = nodeParent[goalNode]; node != -1; node = nodeParent[node]) {
+            int from = node == nodeCount ? startCell : nodeCell[node];
+            // cells[index - 1] is where the leg from "from" to "end" arrives
+            index -= chebyshev(from, end);
+            fillLeg(from, end, cells, index, goalCell);
+            end = from;
+        }
+        return cells;
+    }
+
+    /**
+     * Writes a shortest path from one cell to an h-reachable other cell, excluding the first cell
+     * and the goal, starting at cells[offset].
+     */
+    private void fillLeg(int from, int to, int[] cells, int offset, int goalCell) {
+        int length = chebyshev(from, to);
+        generation++;
+        int head = 0, tail = 0;
+        stamp[from] = generation;
+        queue[tail++] = from;
+        // only cells that keep both distances exact lie on a shortest path between the two
+        while (head < tail && stamp[to] != generation) {
+            int cell = queue[head++];
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            int remaining = chebyshev(cell, to);
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                if (stamp[next] != generation && chebyshev(next, to) == remaining - 1) {
+                    stamp[next] = generation;
+                    parent[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        int index = offset + length - 1;
+        for (int cell = to; cell != from; cell = parent[cell], index--) {
+            if (cell != goalCell) {
+                cells[index] = cell;
+            }
+        }
+    }
+
+    /**
+     * Breadth-first search from the source that only follows h-reachable paths. Leaves in found
+     * the subgoals that are directly h-reachable: no shortest path to them passes another
+     * subgoal, otherwise the route through that subgoal is just as short. A cell is tainted when
+     * it is a subgoal or one of its predecessors is, and the search ends after a level without
+     * an untainted cell.
+     *
+     * @param target Cell whose distance is put in targetDistance if it is directly h-reachable, or -1
+     */
+    private void scan(int source, int target) {
+        generation++;
+        foundCount = 0;
+        targetDistance = -1;
+        int head = 0, tail = 0;
+        stamp[source] = generation;
+        distance[source] = 0;
+        queue[tail++] = source;
+        int level = 0;
+        boolean levelClean = true;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (distance[cell] != level) {
+                if (!levelClean) {
+                    break;
+                }
+                level = distance[cell];
+                levelClean = false;
+            }
+
+            int x = cell % xExtent;
+            int y = cell / xExtent;
+            // every predecessor is one level up and was classified before this level started
+            boolean reachedTainted = false;
+            for (int i = 0; i < NEIGHBOUR_X.length && !reachedTainted; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (obstacles.inBounds(nx, ny)) {
+                    int previous = ny * xExtent + nx;
+                    reachedTainted = stamp[previous] == generation && distance[previous] == level - 1 && tainted[previous];
+                }
+            }
+            boolean stop = cell != source && (nodeOfCell[cell] >= 0 || cell == target);
+            if (stop && !reachedTainted) {
+                if (cell == target) {
+                    targetDistance = level;
+                }
+                if (nodeOfCell[cell] >= 0) {
+                    if (foundCount == found.length) {
+                        found = Arrays.copyOf(found, foundCount * 2);
+                    }
+                    found[foundCount++] = cell;
+                }
+            }
+            tainted[cell] = stop || reachedTainted;
+            if (!tainted[cell]) {
+                levelClean = true;
+            }
+
+            // tainted cells are expanded too, their successors must learn that they are tainted
+            int nextDistance = level + 1;
+            for (int i = 0; i < NEIGHBOUR_X.length; i++) {
+                int nx = x + NEIGHBOUR_X[i];
+                int ny = y + NEIGHBOUR_Y[i];
+                if (obstacles.isBlocked(nx, ny)) {
+                    continue;
+                }
+                int next = ny * xExtent + nx;
+                // a cell no farther away than its Chebyshev distance is h-reachable
+                if (stamp[next] != generation && chebyshev(source, next) == nextDistance) {
+                    stamp[next] = generation;
+                    distance[next] = nextDistance;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tries to walk from the start to the goal in as many moves as their Chebyshev distance,
+     * always advancing along the longer axis and moving along the shorter one towards the goal
+     * when possible. Succeeds in open areas, where the scans would have to cover a lot of cells.
+     *
+     * @return The cells of such a path excluding the start and the goal, or null if the walk got stuck
+     */
+    private int[] straightPath(int startCell, int goalCell) {
+        int length = chebyshev(startCell, goalCell);
+        int[] cells = new int[length - 1];
+        int x = startCell % xExtent;
+        int y = startCell / xExtent;
+        int goalX = goalCell % xExtent;
+        int goalY = goalCell / xExtent;
+        for (int step = 0; step < length - 1; step++) {
+            int dx = goalX - x;
+            int dy = goalY - y;
+            int left = length - step - 1;
+            int next = -1;
+            // towards the goal first, then straight on, then away if there is room to come back
+            for (int bend = 0; bend < 3 && next < 0; bend++) {
+                int sx = Math.abs(dx) >= Math.abs(dy) ? Integer.signum(dx) : minorStep(dx, bend);
+                int sy = Math.abs(dx) >= Math.abs(dy) ? minorStep(dy, bend) : Integer.signum(dy);
+                if (Math.max(Math.abs(dx - sx), Math.abs(dy - sy)) <= left && !obstacles.isBlocked(x + sx, y + sy)) {
+                    next = (y + sy) * xExtent + x + sx;
+                }
+            }
+            if (next < 0) {
+                return null;
+            }
+            cells[step] = next;
+            x = next % xExtent;
+            y = next / xExtent;
+        }
+        return cells;
+    }
+
+    private static int minorStep(int delta, int bend) {
+        int toward = Integer.signum(delta);
+        if (bend == 0) {
+            return toward;
+        }
+        if (bend == 1) {
+            return toward == 0 ? 1 : 0;
+        }
+        return toward == 0 ? -1 : -toward;
+    }
+
+    /**
+     * @return true if the free cell lies beside the end of an obstacle, where shortest paths can bend
+     */
+    private boolean isSubgoal(int x, int y) {
+        for (int i = 0; i < 4; i++) {
+            int bx = x - NEIGHBOUR_X[i];
+            int by = y - NEIGHBOUR_Y[i];
+            if (!obstacles.inBounds(bx, by) || !obstacles.isBlocked(by * xExtent + bx)) {
+                continue;
+            }
+            // the sides of b across the direction from the cell to b
+            int sideX = NEIGHBOUR_Y[i];
+            int sideY = NEIGHBOUR_X[i];
+            if (!obstacles.isBlocked(bx + sideX, by + sideY) || !obstacles.isBlocked(bx - sideX, by - sideY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int chebyshev(int a, int b) {
+        return Math.max(Math.abs(a % xExtent - b % xExtent), Math.abs(a / xExtent - b / xExtent));
+    }
+}
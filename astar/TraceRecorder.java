@@ -0,0 +1,196 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Level-gated trace log for the agent's move loop.
+ *
+ * A disabled level costs one integer comparison. An enabled message is copied into a slot of a
+ * preallocated ring buffer as a format string plus up to three int arguments; no string is built
+ * on the caller's thread. A daemon thread drains the buffer, formats the messages and prints them,
+ * so the caller never waits for stdout. When the buffer is full new messages are dropped and
+ * counted instead of blocking. The drain thread parks while the buffer is empty and is only
+ * woken by a message recorded while it is parked.
+ *
+ * Filling a slot is serialized by a lock, so the agent's callbacks and its background planner
+ * thread can both record; the lock is only taken for enabled levels.
+ */
+public class TraceRecorder {
+
+    public enum Level {
+        OFF,
+        WARN,
+        INFO,
+        DEBUG,
+        TRACE
+    }
+
+    private final PrintStream out;
+    private final int mask;
+    private final Level[] levels;
+    private final String[] formats;
+    private final int[] args;
+    private final int[] argCounts;
+
+    // head is only written under the recording lock, tail only by the drain thread
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile int threshold;
+    private volatile Thread drainThread;
+    // set by the drain thread before it checks for messages one last time and parks
+    private volatile boolean draining = true;
+
+    /**
+     * @param level Most detailed level that is recorded
+     * @param capacity Number of buffered messages, rounded up to a power of two
+     * @param out Stream the drain thread prints to
+     */
+    public TraceRecorder(Level level, int capacity, PrintStream out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.out = out;
+        this.mask = size - 1;
+        levels = new Level[size];
+        formats = new String[size];
+        args = new int[size * 3];
+        argCounts = new int[size];
+        setLevel(level);
+    }
+
+    public void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold;
+    }
+
+    /**
+     * @return Number of messages dropped because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void record(Level level, String message) {
+        if (isEnabled(level)) {
+            append(level, message, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * @param format Format for {@link String#format}, with a %d for every argument
+     */
+    public void record(Level level, String format, int a) {
+        if (isEnabled(level)) {
+            append(level, format, 1, a, 0, 0);
+        }
+    }
+
+    public void record(Level level, String format, int a, int b) {
+        if (isEnabled(level)) {
+            append(level, format, 2, a, b, 0);
+        }
+    }
+
+    public void record(Level level, String format, int a, int b, int c) {
+        if (isEnabled(level)) {
+            append(level, format, 3, a, b, c);
+        }
+    }
+
+    /**
+     * Waits until everything recorded so far has been printed, e.g. before the summary in terminalStep.
+     *
+     * @param timeoutMillis Longest time to wait
+     */
+    public void flush(long timeoutMillis) {
+        long target = head.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (tail.get() < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(drainThread);
+            Thread.yield();
+        }
+        out.flush();
+    }
+
+    private synchronized void append(Level level, String format, int argCount, int a, int b, int c) {
+        long position = head.get();
+        if (position - tail.get() > mask) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int slot = (int) position & mask;
+        levels[slot] = level;
+        formats[slot] = format;
+        argCounts[slot] = argCount;
+        args[slot * 3] = a;
+        args[slot * 3 + 1] = b;
+        args[slot * 3 + 2] = c;
+        // publishes the slot to the drain thread, ordered before the read of draining below
+        head.set(position + 1);
+
+        if (drainThread == null) {
+            startDrainThread();
+        } else if (!draining) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private void startDrainThread() {
+        drainThread = new Thread(this::drain, "astar-trace");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    private void drain() {
+        long reportedDrops = 0;
+        while (true) {
+            long position = tail.get();
+            long end = head.get();
+            if (position == end) {
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    out.println("[WARN] trace buffer full, " + (drops - reportedDrops) + " messages dropped");
+                    reportedDrops = drops;
+                }
+                // a message recorded after this store sees draining false and unparks this thread
+                draining = false;
+                if (head.get() == end) {
+                    LockSupport.park(this);
+                }
+                draining = true;
+                continue;
+            }
+            for (; position < end; position++) {
+                int slot = (int) position & mask;
+                out.println(format(slot));
+                formats[slot] = null;
+            }
+            // frees the slots for recording
+            tail.lazySet(end);
+        }
+    }
+
+    private String format(int slot) {
+        String message;
+        switch (argCounts[slot]) {
+            case 0:
+                message = formats[slot];
+                break;
+            case 1:
+                message = String.format(formats[slot], args[slot * 3]);
+                break;
+            case 2:
+                message = String.format(formats[slot], args[slot * 3], args[slot * 3 + 1]);
+                break;
+            default:
+                message = String.format(formats[slot], args[slot * 3], args[slot * 3 + 1], args[slot * 3 + 2]);
+        }
+        return "[" + levels[slot] + "] " + message;
+    }
+}
@@ -0,0 +1,117 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy of a few units of a {@link WorldView} taken on one turn, for a search that runs on another
+ * thread while the live view moves on. Only the copied units can be looked up; the snapshot has no
+ * resources, since the agent diffs those into its {@link ObstacleGrid} every turn before a search starts.
+ */
+public class WorldSnapshot implements WorldView {
+
+    private static final class Unit implements UnitInfo {
+
+        private final int id, x, y, hp;
+        private final String templateName;
+
+        Unit(UnitInfo unit) {
+            id = unit.getID();
+            x = unit.getXPosition();
+            y = unit.getYPosition();
+            hp = unit.getHP();
+            templateName = unit.getTemplateName();
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public int getXPosition() {
+            return x;
+        }
+
+        @Override
+        public int getYPosition() {
+            return y;
+        }
+
+        @Override
+        public int getHP() {
+            return hp;
+        }
+
+        @Override
+        public String getTemplateName() {
+            return templateName;
+        }
+    }
+
+    private final int xExtent, yExtent, turnNumber;
+    private final Integer[] playerNumbers;
+    private final Map<Integer, Unit> units = new HashMap<>();
+
+    /**
+     * @param view Live view to copy from
+     * @param unitIDs Units to copy; ones that no longer exist are left out
+     */
+    public WorldSnapshot(WorldView view, int... unitIDs) {
+        xExtent = view.getXExtent();
+        yExtent = view.getYExtent();
+        turnNumber = view.getTurnNumber();
+        playerNumbers = view.getPlayerNumbers().clone();
+        for (int unitID : unitIDs) {
+            UnitInfo unit = view.getUnit(unitID);
+            if (unit != null) {
+                units.put(unitID, new Unit(unit));
+            }
+        }
+    }
+
+    @Override
+    public int getXExtent() {
+        return xExtent;
+    }
+
+    @Override
+    public int getYExtent() {
+        return yExtent;
+    }
+
+    @Override
+    public int getTurnNumber() {
+        return turnNumber;
+    }
+
+    @Override
+    public Integer[] getPlayerNumbers() {
+        return playerNumbers.clone();
+    }
+
+    /**
+     * @return No units, the snapshot does not record who owns the copied ones
+     */
+    @Override
+    public List<Integer> getUnitIds(int playernum) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public UnitInfo getUnit(int unitID) {
+        return units.get(unitID);
+    }
+
+    @Override
+    public List<Integer> getAllResourceIds() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public ResourceInfo getResourceNode(int resourceID) {
+        return null;
+    }
+}
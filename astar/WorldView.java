@@ -0,0 +1,56 @@
+package edu.cwru.sepia.agent.astar;
+
+import java.util.List;
+
+/**
+ * The part of SEPIA's State.StateView the root agent reads. The agent plays against this
+ * interface, so it can be driven either by a real SEPIA environment through
+ * {@link SepiaWorldView} or by an in-memory world for offline runs.
+ */
+public interface WorldView {
+
+    interface UnitInfo {
+        int getID();
+
+        int getXPosition();
+
+        int getYPosition();
+
+        int getHP();
+
+        /**
+         * @return Name of the unit's template, e.g. "Footman" or "TownHall"
+         */
+        String getTemplateName();
+    }
+
+    interface ResourceInfo {
+        int getID();
+
+        int getXPosition();
+
+        int getYPosition();
+    }
+
+    int getXExtent();
+
+    int getYExtent();
+
+    int getTurnNumber();
+
+    Integer[] getPlayerNumbers();
+
+    List<Integer> getUnitIds(int playernum);
+
+    /**
+     * @return The unit, or null if it does not exist (any more)
+     */
+    UnitInfo getUnit(int unitID);
+
+    List<Integer> getAllResourceIds();
+
+    /**
+     * @return The resource node, or null if it does not exist (any more)
+     */
+    ResourceInfo getResourceNode(int resourceID);
+}
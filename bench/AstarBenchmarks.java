@@ -0,0 +1,47 @@
+package edu.cwru.sepia.agent.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs both search benchmarks twice, once for ops/sec and once for ns/op, with the GC profiler
+ * reporting the allocation rate. Arguments are passed on as a benchmark name filter, e.g. "Root".
+ */
+public final class AstarBenchmarks {
+
+    private AstarBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "(Root|P3)AstarBenchmark";
+        new File("saves").mkdirs();
+
+        Options throughput = new OptionsBuilder()
+                .include(include)
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .result("saves/astar-bench-thrpt.json")
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        new Runner(throughput).run();
+
+        Options averageTime = new OptionsBuilder()
+                .include(include)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .addProfiler(GCProfiler.class)
+                .result("saves/astar-bench-avgt.json")
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        new Runner(averageTime).run();
+    }
+}
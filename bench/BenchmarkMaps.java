@@ -0,0 +1,167 @@
+package edu.cwru.sepia.agent.bench;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic square maps for the search benchmarks. Every map is generated from a fixed seed so
+ * runs are comparable, and the goal is always reachable from the start.
+ */
+public final class BenchmarkMaps {
+
+    /**
+     * Kinds of map. The RANDOM_* kinds place trees independently with the given density.
+     */
+    public enum Kind {
+        OPEN(0),
+        MAZE(0),
+        RANDOM_10(10),
+        RANDOM_20(20),
+        RANDOM_30(30),
+        RANDOM_40(40);
+
+        final int density;
+
+        Kind(int density) {
+            this.density = density;
+        }
+    }
+
+    /**
+     * A generated map. blocked is indexed by y * size + x like the agent's obstacle grid.
+     */
+    public static final class Map {
+        public final int size;
+        public final boolean[] blocked;
+        public final int startX, startY, goalX, goalY;
+
+        Map(int size, boolean[] blocked, int startX, int startY, int goalX, int goalY) {
+            this.size = size;
+            this.blocked = blocked;
+            this.startX = startX;
+            this.startY = startY;
+            this.goalX = goalX;
+            this.goalY = goalY;
+        }
+
+        public int startCell() {
+            return startY * size + startX;
+        }
+
+        public int goalCell() {
+            return goalY * size + goalX;
+        }
+    }
+
+    private BenchmarkMaps() {
+    }
+
+    /**
+     * @param kind Kind of map
+     * @param size Width and height in cells
+     * @param seed Seed for the random kinds and the maze
+     * @param fourConnected true if the goal must be reachable without diagonal moves, as for the
+     *        P3 search; otherwise diagonal moves count as in the root agent
+     * @return Map with the start in the top left and the goal in the bottom right corner
+     */
+    public static Map generate(Kind kind, int size, long seed, boolean fourConnected) {
+        switch (kind) {
+            case OPEN:
+                return new Map(size, new boolean[size * size], 0, 0, size - 1, size - 1);
+            case MAZE:
+                return maze(size, new Random(seed));
+            default:
+                return random(size, kind.density, seed, fourConnected);
+        }
+    }
+
+    /**
+     * Places trees at random and retries with the next seed until the corners are connected.
+     */
+    private static Map random(int size, int density, long seed, boolean fourConnected) {
+        while (true) {
+            Random random = new Random(seed++);
+            boolean[] blocked = new boolean[size * size];
+            for (int i = 0; i < blocked.length; i++) {
+                blocked[i] = random.nextInt(100) < density;
+            }
+            blocked[0] = false;
+            blocked[blocked.length - 1] = false;
+            if (connected(blocked, size, 0, blocked.length - 1, fourConnected)) {
+                return new Map(size, blocked, 0, 0, size - 1, size - 1);
+            }
+        }
+    }
+
+    /**
+     * Perfect maze carved by a depth-first walk over the cells with odd coordinates. The walls are
+     * a cell thick, so a diagonal move can only cut a corner where two passages meet.
+     */
+    private static Map maze(int size, Random random) {
+        boolean[] blocked = new boolean[size * size];
+        Arrays.fill(blocked, true);
+        int last = (size - 2) | 1;
+        if (last >= size) {
+            last -= 2;
+        }
+
+        int[] dx = {0, 2, 0, -2};
+        int[] dy = {-2, 0, 2, 0};
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        blocked[size + 1] = false;
+        stack.push(size + 1);
+        while (!stack.isEmpty()) {
+            int cell = stack.peek();
+            int x = cell % size;
+            int y = cell / size;
+            int first = random.nextInt(4);
+            boolean moved = false;
+            for (int i = 0; i < 4 && !moved; i++) {
+                int d = (first + i) & 3;
+                int nx = x + dx[d];
+                int ny = y + dy[d];
+                if (nx < 1 || ny < 1 || nx > last || ny > last || !blocked[ny * size + nx]) {
+                    continue;
+                }
+                blocked[(y + dy[d] / 2) * size + x + dx[d] / 2] = false;
+                blocked[ny * size + nx] = false;
+                stack.push(ny * size + nx);
+                moved = true;
+            }
+            if (!moved) {
+                stack.pop();
+            }
+        }
+        return new Map(size, blocked, 1, 1, last, last);
+    }
+
+    private static boolean connected(boolean[] blocked, int size, int from, int to, boolean fourConnected) {
+        boolean[] seen = new boolean[blocked.length];
+        int[] queue = new int[blocked.length];
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        seen[from] = true;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == to) {
+                return true;
+            }
+            int x = cell % size;
+            int y = cell / size;
+            for (int ny = y - 1; ny <= y + 1; ny++) {
+                for (int nx = x - 1; nx <= x + 1; nx++) {
+                    if (nx < 0 || ny < 0 || nx >= size || ny >= size || (fourConnected && nx != x && ny != y)) {
+                        continue;
+                    }
+                    int next = ny * size + nx;
+                    if (!blocked[next] && !seen[next]) {
+                        seen[next] = true;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package edu.cwru.sepia.agent.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cwru.sepia.agent.minimax.AstarAgent;
+
+/**
+ * The minimax agent's A* (P3agents AstarAgent.AstarSearch) on the same maps as
+ * {@link RootAstarBenchmark}.
+ *
+ * AstarSearch and its MapLocation are private to the agent, so they are reached by reflection once
+ * in the setup and called through a MethodHandle.
+ *
+ * That search moves in four directions only, so the random maps are generated to be connected
+ * without diagonal moves. Its open list accepts a second entry for a cell reached again at the same
+ * cost, so the work grows exponentially with the open area: an open 9x9 map already takes seconds
+ * per search. The default sizes are therefore small; larger ones can be tried on mazes with e.g.
+ * -p kind=MAZE -p size=32,128.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class P3AstarBenchmark {
+
+    @Param({"OPEN", "MAZE", "RANDOM_10", "RANDOM_20", "RANDOM_30", "RANDOM_40"})
+    public BenchmarkMaps.Kind kind;
+
+    @Param({"8"})
+    public int size;
+
+    private MethodHandle search;
+    private AstarAgent agent;
+    private Object start, goal;
+    private Set<Object> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        BenchmarkMaps.Map map = BenchmarkMaps.generate(kind, size, 42, true);
+        agent = new AstarAgent(size, size);
+
+        Class<?> locationClass = Class.forName(AstarAgent.class.getName() + "$MapLocation");
+        Constructor<?> location = locationClass.getDeclaredConstructor(AstarAgent.class, int.class, int.class,
+                locationClass, float.class);
+        location.setAccessible(true);
+
+        start = location.newInstance(agent, map.startX, map.startY, null, 0f);
+        goal = location.newInstance(agent, map.goalX, map.goalY, null, 0f);
+        resources = new HashSet<>();
+        for (int cell = 0; cell < map.blocked.length; cell++) {
+            if (map.blocked[cell]) {
+                resources.add(location.newInstance(agent, cell % size, cell / size, null, 0f));
+            }
+        }
+
+        Method method = AstarAgent.class.getDeclaredMethod("AstarSearch", locationClass, locationClass, int.class,
+                int.class, locationClass, Set.class);
+        method.setAccessible(true);
+        search = MethodHandles.lookup().unreflect(method);
+    }
+
+    @Benchmark
+    public Object search() throws Throwable {
+        return search.invoke(agent, start, goal, size, size, null, resources);
+    }
+}
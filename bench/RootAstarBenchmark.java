@@ -0,0 +1,70 @@
+package edu.cwru.sepia.agent.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cwru.sepia.agent.astar.GridAstar;
+import edu.cwru.sepia.agent.astar.ObstacleGrid;
+import edu.cwru.sepia.agent.astar.SearchArena;
+
+/**
+ * The root agent's A* (AstarAgent.AstarSearch, which runs GridAstar in the agent's arena).
+ *
+ * replan measures a search in an arena that is reused like the agent does on every replan,
+ * firstSearch includes allocating the arena like the first search of an episode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RootAstarBenchmark {
+
+    @Param({"OPEN", "MAZE", "RANDOM_10", "RANDOM_20", "RANDOM_30", "RANDOM_40"})
+    public BenchmarkMaps.Kind kind;
+
+    @Param({"32", "128", "512", "2048"})
+    public int size;
+
+    private ObstacleGrid obstacles;
+    private SearchArena arena;
+    private int startCell, goalCell;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkMaps.Map map = BenchmarkMaps.generate(kind, size, 42, false);
+        obstacles = new ObstacleGrid(size, size);
+        for (int cell = 0; cell < map.blocked.length; cell++) {
+            obstacles.setBlocked(cell, map.blocked[cell]);
+        }
+        arena = new SearchArena(obstacles);
+        startCell = map.startCell();
+        goalCell = map.goalCell();
+    }
+
+    @Benchmark
+    public int[] replan() {
+        arena.reset();
+        return GridAstar.search(arena, startCell, goalCell);
+    }
+
+    @Benchmark
+    public int[] firstSearch() {
+        SearchArena fresh = new SearchArena(obstacles);
+        fresh.reset();
+        return GridAstar.search(fresh, startCell, goalCell);
+    }
+}
@@ -0,0 +1,266 @@
+package edu.cwru.sepia.agent.headless;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.agent.AstarAgent;
+import edu.cwru.sepia.agent.astar.WorldView;
+
+/**
+ * Plays many generated path finding episodes against the root AstarAgent without SEPIA and
+ * reports the throughput, e.g. for profiling the planners.
+ *
+ * Arguments are key=value pairs: episodes, size, density (tree percentage), footmen, enemy
+ * (still, random or chase), maxturns, seed, quiet, turnms (a pause after every turn, as SEPIA
+ * leaves between turns, so background planner threads get time on few cores) and felling (cut a
+ * random tree down every that many turns, as in a harvesting game). All other arguments, e.g.
+ * mode=jps, are passed on to the agent.
+ */
+public final class HeadlessRunner {
+
+    private static final int FOOTMAN_HP = 160;
+    private static final int FOOTMAN_DAMAGE = 11;
+    private static final int TOWNHALL_HP = 1200;
+
+    private int episodes = 1000;
+    private int size = 64;
+    private int density = 20;
+    private int footmen = 1;
+    private String enemy = "random";
+    private int maxTurns = -1;
+    private long seed = 1;
+    private boolean quiet = true;
+    private long turnMillis = 0;
+    private int felling = 0;
+    private final List<String> agentArgs = new ArrayList<>();
+
+    private HeadlessRunner() {
+    }
+
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2 || !runner.applyArgument(keyValue[0].trim().toLowerCase(), keyValue[1].trim())) {
+                runner.agentArgs.add(arg);
+            }
+        }
+        runner.run();
+    }
+
+    private boolean applyArgument(String key, String value) {
+        switch (key) {
+            case "episodes":
+                episodes = Integer.parseInt(value);
+                return true;
+            case "size":
+                size = Integer.parseInt(value);
+                return true;
+            case "density":
+                density = Integer.parseInt(value);
+                return true;
+            case "footmen":
+                footmen = Integer.parseInt(value);
+                return true;
+            case "enemy":
+                enemy = value.toLowerCase();
+                return true;
+            case "maxturns":
+                maxTurns = Integer.parseInt(value);
+                return true;
+            case "seed":
+                seed = Long.parseLong(value);
+                return true;
+            case "quiet":
+                quiet = Boolean.parseBoolean(value);
+                return true;
+            case "turnms":
+                turnMillis = Long.parseLong(value);
+                return true;
+            case "felling":
+                felling = Integer.parseInt(value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void run() {
+        if (maxTurns < 0) {
+            maxTurns = size * 8;
+        }
+        PrintStream out = System.out;
+        if (quiet) {
+            // the agent prints a summary per episode
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+        }
+
+        Random random = new Random(seed);
+        AstarAgent agent = new AstarAgent(0, agentArgs.toArray(new String[0]));
+        int wins = 0, failures = 0, errors = 0;
+        long turns = 0;
+        long startTime = System.nanoTime();
+        try {
+            for (int episode = 0; episode < episodes; episode++) {
+                Scenario scenario = new Scenario(random);
+                try {
+                    if (play(agent, scenario, random)) {
+                        wins++;
+                    }
+                } catch (RuntimeException e) {
+                    if ("Unable to find path!".equals(e.getMessage())) {
+                        // the enemy or the trees wall the footman in
+                        failures++;
+                    } else {
+                        if (errors == 0) {
+                            System.err.println("Episode " + episode + " (seed=" + seed + ") aborted:");
+                            e.printStackTrace();
+                        }
+                        errors++;
+                    }
+                }
+                turns += scenario.world.getTurnNumber();
+            }
+        } finally {
+            System.setOut(out);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        out.println("Episodes: " + episodes + " on " + size + "x" + size + " maps with " + density + "% trees");
+        out.println("Townhalls destroyed: " + wins + ", episodes without a path: " + failures
+                + ", episodes aborted by an exception: " + errors);
+        out.println("Mean turns per episode: " + (episodes == 0 ? 0 : turns / (double) episodes));
+        out.println("Wall time: " + seconds + "s, " + (episodes / seconds * 60) + " episodes/min, "
+                + (turns / seconds) + " turns/s");
+    }
+
+    /**
+     * @return true if the agent destroyed the townhall within the turn limit
+     */
+    private boolean play(AstarAgent agent, Scenario scenario, Random random) {
+        HeadlessWorld world = scenario.world;
+        Map<Integer, Action> actions = agent.initialStep(world);
+        while (world.getUnit(scenario.townhallID) != null && world.getTurnNumber() < maxTurns) {
+            world.step(actions);
+            if (world.getUnit(scenario.townhallID) == null) {
+                break;
+            }
+            moveEnemy(scenario, random);
+            if (felling > 0 && world.getTurnNumber() % felling == 0) {
+                fellTree(world, random);
+            }
+            pause();
+            actions = agent.middleStep(world);
+        }
+        agent.terminalStep(world);
+        return world.getUnit(scenario.townhallID) == null;
+    }
+
+    private void fellTree(HeadlessWorld world, Random random) {
+        List<Integer> trees = world.getAllResourceIds();
+        if (!trees.isEmpty()) {
+            world.removeResource(trees.get(random.nextInt(trees.size())));
+        }
+    }
+
+    private void pause() {
+        if (turnMillis > 0) {
+            try {
+                Thread.sleep(turnMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Moves the enemy footman one cell, standing still, at random or towards the nearest footman.
+     */
+    private void moveEnemy(Scenario scenario, Random random) {
+        WorldView.UnitInfo enemyFootman = scenario.world.getUnit(scenario.enemyFootmanID);
+        if (enemyFootman == null || enemy.equals("still")) {
+            return;
+        }
+        int x = enemyFootman.getXPosition();
+        int y = enemyFootman.getYPosition();
+        int bestX = x, bestY = y;
+        if (enemy.equals("chase")) {
+            int bestDistance = Integer.MAX_VALUE;
+            for (int unitID : scenario.world.getUnitIds(0)) {
+                WorldView.UnitInfo footman = scenario.world.getUnit(unitID);
+                int distance = Math.max(Math.abs(footman.getXPosition() - x), Math.abs(footman.getYPosition() - y));
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestX = x + Integer.signum(footman.getXPosition() - x);
+                    bestY = y + Integer.signum(footman.getYPosition() - y);
+                }
+            }
+        } else {
+            bestX = x + random.nextInt(3) - 1;
+            bestY = y + random.nextInt(3) - 1;
+        }
+        if ((bestX != x || bestY != y) && scenario.world.isFree(bestX, bestY)) {
+            scenario.world.moveUnit(scenario.enemyFootmanID, bestX, bestY);
+        }
+    }
+
+    /**
+     * One generated map: footmen in the top left quarter, the townhall and the enemy footman in
+     * the bottom right quarter and trees everywhere else.
+     */
+    private final class Scenario {
+        final HeadlessWorld world = new HeadlessWorld(size, size);
+        final int townhallID;
+        final int enemyFootmanID;
+
+        Scenario(Random random) {
+            int quarter = Math.max(1, size / 4);
+            List<int[]> footmanCells = new ArrayList<>();
+            while (footmanCells.size() < footmen) {
+                int[] cell = {random.nextInt(quarter), random.nextInt(quarter)};
+                if (!contains(footmanCells, cell)) {
+                    footmanCells.add(cell);
+                }
+            }
+            int[] townhallCell = {size - 1 - random.nextInt(quarter), size - 1 - random.nextInt(quarter)};
+
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int[] cell = {x, y};
+                    // keep the townhall's neighbours clear so it can always be attacked
+                    boolean nearTownhall = Math.abs(x - townhallCell[0]) <= 1 && Math.abs(y - townhallCell[1]) <= 1;
+                    if (!nearTownhall && !contains(footmanCells, cell) && random.nextInt(100) < density) {
+                        world.addResource(x, y);
+                    }
+                }
+            }
+
+            for (int[] cell : footmanCells) {
+                world.addUnit(0, "Footman", cell[0], cell[1], FOOTMAN_HP, FOOTMAN_DAMAGE);
+            }
+            townhallID = world.addUnit(1, "TownHall", townhallCell[0], townhallCell[1], TOWNHALL_HP, 0);
+            int enemyX = Math.max(0, townhallCell[0] - 1);
+            int enemyY = Math.max(0, townhallCell[1] - 1);
+            enemyFootmanID = world.isFree(enemyX, enemyY)
+                    ? world.addUnit(1, "Footman", enemyX, enemyY, FOOTMAN_HP, FOOTMAN_DAMAGE) : -1;
+        }
+
+        private boolean contains(List<int[]> cells, int[] cell) {
+            for (int[] other : cells) {
+                if (other[0] == cell[0] && other[1] == cell[1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
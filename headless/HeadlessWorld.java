@@ -0,0 +1,308 @@
+package edu.cwru.sepia.agent.headless;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.action.ActionType;
+import edu.cwru.sepia.action.DirectedAction;
+import edu.cwru.sepia.action.TargetedAction;
+import edu.cwru.sepia.agent.astar.WorldView;
+import edu.cwru.sepia.util.Direction;
+
+/**
+ * In-memory stand-in for a SEPIA environment with just enough rules for the path finding
+ * scenarios: units move one cell per turn in any of the eight directions, cannot enter occupied
+ * cells, and attack units next to them. Trees are resource nodes that stay until they are removed,
+ * as if cut down.
+ *
+ * The world is the agent's {@link WorldView}, and {@link #step(Map)} plays one turn of actions and
+ * records the feedback SEPIA would put in the command history.
+ */
+public class HeadlessWorld implements WorldView {
+
+    /**
+     * Outcome of one unit's action, like SEPIA's ActionFeedback.
+     */
+    public enum Feedback {
+        COMPLETED,
+        FAILED
+    }
+
+    private static final int EMPTY = -1;
+    private static final int RESOURCE = -2;
+
+    private static final class SimUnit implements UnitInfo {
+        final int id;
+        final int player;
+        final String templateName;
+        final int damage;
+        int x, y, hp;
+
+        SimUnit(int id, int player, String templateName, int x, int y, int hp, int damage) {
+            this.id = id;
+            this.player = player;
+            this.templateName = templateName;
+            this.x = x;
+            this.y = y;
+            this.hp = hp;
+            this.damage = damage;
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public int getXPosition() {
+            return x;
+        }
+
+        @Override
+        public int getYPosition() {
+            return y;
+        }
+
+        @Override
+        public int getHP() {
+            return hp;
+        }
+
+        @Override
+        public String getTemplateName() {
+            return templateName;
+        }
+    }
+
+    private static final class SimResource implements ResourceInfo {
+        final int id, x, y;
+
+        SimResource(int id, int x, int y) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public int getXPosition() {
+            return x;
+        }
+
+        @Override
+        public int getYPosition() {
+            return y;
+        }
+    }
+
+    private final int xExtent, yExtent;
+    // unit id, RESOURCE or EMPTY for every cell
+    private final int[] occupant;
+    private final Map<Integer, SimUnit> units = new LinkedHashMap<>();
+    private final Map<Integer, SimResource> resources = new LinkedHashMap<>();
+    private final List<Map<Integer, Feedback>> feedback = new ArrayList<>();
+    private int turn;
+    private int nextID;
+
+    public HeadlessWorld(int xExtent, int yExtent) {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        occupant = new int[xExtent * yExtent];
+        Arrays.fill(occupant, EMPTY);
+    }
+
+    /**
+     * @return The new unit's id
+     */
+    public int addUnit(int player, String templateName, int x, int y, int hp, int damage) {
+        if (!isFree(x, y)) {
+            throw new IllegalArgumentException("Cell (" + x + ", " + y + ") is not free");
+        }
+        int id = nextID++;
+        units.put(id, new SimUnit(id, player, templateName, x, y, hp, damage));
+        occupant[y * xExtent + x] = id;
+        return id;
+    }
+
+    /**
+     * Adds a tree.
+     *
+     * @return The resource node's id
+     */
+    public int addResource(int x, int y) {
+        if (!isFree(x, y)) {
+            throw new IllegalArgumentException("Cell (" + x + ", " + y + ") is not free");
+        }
+        int id = nextID++;
+        resources.put(id, new SimResource(id, x, y));
+        occupant[y * xExtent + x] = RESOURCE;
+        return id;
+    }
+
+    /**
+     * Removes a tree, e.g. one cut down for wood.
+     */
+    public void removeResource(int resourceID) {
+        SimResource resource = resources.remove(resourceID);
+        if (resource != null) {
+            occupant[resource.getYPosition() * xExtent + resource.getXPosition()] = EMPTY;
+        }
+    }
+
+    /**
+     * @return true if the cell is on the map and neither a unit nor a tree is on it
+     */
+    public boolean isFree(int x, int y) {
+        return x >= 0 && y >= 0 && x < xExtent && y < yExtent && occupant[y * xExtent + x] == EMPTY;
+    }
+
+    /**
+     * Puts a unit on another free cell without an action, e.g. to script the enemy's moves.
+     */
+    public void moveUnit(int unitID, int x, int y) {
+        SimUnit unit = units.get(unitID);
+        if (unit == null || !isFree(x, y)) {
+            throw new IllegalArgumentException("Cannot move unit " + unitID + " to (" + x + ", " + y + ")");
+        }
+        occupant[unit.y * xExtent + unit.x] = EMPTY;
+        occupant[y * xExtent + x] = unit.id;
+        unit.x = x;
+        unit.y = y;
+    }
+
+    /**
+     * Plays one turn. Actions are carried out one after another in the map's iteration order;
+     * moves into occupied cells and attacks on units out of reach fail.
+     *
+     * @param actions Action per unit id, may be null
+     * @return Feedback per unit id for this turn
+     */
+    public Map<Integer, Feedback> step(Map<Integer, Action> actions) {
+        Map<Integer, Feedback> results = new HashMap<>();
+        if (actions != null) {
+            for (Map.Entry<Integer, Action> entry : actions.entrySet()) {
+                SimUnit unit = units.get(entry.getKey());
+                if (unit != null) {
+                    results.put(unit.id, apply(unit, entry.getValue()));
+                }
+            }
+        }
+        feedback.add(results);
+        turn++;
+        return results;
+    }
+
+    /**
+     * Like HistoryView.getCommandFeedback.
+     *
+     * @param playernum Player whose units' feedback is returned
+     * @param turnNumber Turn the actions were played in
+     * @return Feedback per unit id, empty for turns not played yet
+     */
+    public Map<Integer, Feedback> getCommandFeedback(int playernum, int turnNumber) {
+        if (turnNumber < 0 || turnNumber >= feedback.size()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Feedback> results = new HashMap<>();
+        for (Map.Entry<Integer, Feedback> entry : feedback.get(turnNumber).entrySet()) {
+            SimUnit unit = units.get(entry.getKey());
+            if (unit == null || unit.player == playernum) {
+                results.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return results;
+    }
+
+    private Feedback apply(SimUnit unit, Action action) {
+        if (action.getType() == ActionType.PRIMITIVEMOVE && action instanceof DirectedAction) {
+            Direction direction = ((DirectedAction) action).getDirection();
+            int x = unit.x + direction.xComponent();
+            int y = unit.y + direction.yComponent();
+            if (!isFree(x, y)) {
+                return Feedback.FAILED;
+            }
+            occupant[unit.y * xExtent + unit.x] = EMPTY;
+            occupant[y * xExtent + x] = unit.id;
+            unit.x = x;
+            unit.y = y;
+            return Feedback.COMPLETED;
+        }
+        if (action.getType() == ActionType.PRIMITIVEATTACK && action instanceof TargetedAction) {
+            SimUnit target = units.get(((TargetedAction) action).getTargetId());
+            if (target == null || Math.abs(target.x - unit.x) > 1 || Math.abs(target.y - unit.y) > 1) {
+                return Feedback.FAILED;
+            }
+            target.hp -= unit.damage;
+            if (target.hp <= 0) {
+                units.remove(target.id);
+                occupant[target.y * xExtent + target.x] = EMPTY;
+            }
+            return Feedback.COMPLETED;
+        }
+        // gathering, building and compound actions are not simulated
+        return Feedback.FAILED;
+    }
+
+    @Override
+    public int getXExtent() {
+        return xExtent;
+    }
+
+    @Override
+    public int getYExtent() {
+        return yExtent;
+    }
+
+    @Override
+    public int getTurnNumber() {
+        return turn;
+    }
+
+    @Override
+    public Integer[] getPlayerNumbers() {
+        List<Integer> players = new ArrayList<>();
+        for (SimUnit unit : units.values()) {
+            if (!players.contains(unit.player)) {
+                players.add(unit.player);
+            }
+        }
+        Collections.sort(players);
+        return players.toArray(new Integer[0]);
+    }
+
+    @Override
+    public List<Integer> getUnitIds(int playernum) {
+        List<Integer> ids = new ArrayList<>();
+        for (SimUnit unit : units.values()) {
+            if (unit.player == playernum) {
+                ids.add(unit.id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public UnitInfo getUnit(int unitID) {
+        return units.get(unitID);
+    }
+
+    @Override
+    public List<Integer> getAllResourceIds() {
+        return new ArrayList<>(resources.keySet());
+    }
+
+    @Override
+    public ResourceInfo getResourceNode(int resourceID) {
+        return resources.get(resourceID);
+    }
+}